@@ -0,0 +1,44 @@
+package Agents;
+
+import java.util.Random;
+
+/**
+ * Open-loop arrival times for submitted tasks. Each arrival is due at a fixed offset from
+ * the start, uniform or exponentially distributed (Poisson arrivals), regardless of how
+ * long earlier submissions took, so a slow platform shows up as queueing rather than as
+ * a lower offered rate. A rate of 0 submits as fast as possible.
+ */
+public final class ArrivalSchedule {
+    private final double meanGapNanos;
+    private final boolean poisson;
+    private final Random random = new Random(Settings.getLong("arrivalSeed", 1));
+    private long start = 0;
+    private double dueOffset = 0;
+    private long lag = 0;
+
+    public ArrivalSchedule(double ratePerSecond, boolean poisson) {
+        this.meanGapNanos = ratePerSecond > 0 ? 1e9 / ratePerSecond : 0;
+        this.poisson = poisson;
+    }
+
+    /**
+     * Waits until the next arrival is due.
+     */
+    public void await() throws InterruptedException {
+        if (meanGapNanos == 0) return;
+        long now = System.nanoTime();
+        if (start == 0) start = now;
+        else dueOffset += poisson ? -Math.log(1 - random.nextDouble()) * meanGapNanos : meanGapNanos;
+
+        long wait = start + (long) dueOffset - now;
+        if (wait > 0) Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+        lag = Math.max(0, -wait);
+    }
+
+    /**
+     * How late the last arrival was submitted; growing lag means the submitter itself is the bottleneck.
+     */
+    public long lagMillis() {
+        return lag / 1_000_000;
+    }
+}
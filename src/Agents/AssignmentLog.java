@@ -0,0 +1,200 @@
+package Agents;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Checkpoint of one computer's assignment: the tasks it holds, their owners and the last
+ * balancing epoch, kept as a binary append log in a memory-mapped file. Each change is one
+ * small record written into the mapping, then committed by moving the end offset in the
+ * header, so a crash leaves either the whole record or none of it. The mapping lives in the
+ * page cache and survives the death of the JVM, not of the machine. When the file is full
+ * the live state is rewritten into a fresh file, twice as large if it is more than half full,
+ * which also drops the records of tasks that have left.
+ *
+ * Header: magic, version, end offset (long). Records:
+ * ADD (1) complexity name owner, REMOVE (2) name, EPOCH (3) epoch; strings are a short length
+ * followed by UTF-8 bytes, and an empty owner means the task is its own owner.
+ */
+public final class AssignmentLog implements Closeable {
+    private static final int MAGIC = 0x414C4F47;
+    private static final int VERSION = 1;
+    private static final int HEADER = 16;
+    private static final byte ADD = 1, REMOVE = 2, EPOCH = 3;
+
+    public record Entry(int complexity, String owner) {
+    }
+
+    private final File file;
+    private final int initialSize;
+    private MappedByteBuffer buffer;
+    private final Map<String, Entry> live = new LinkedHashMap<>();
+    private int epoch = 0;
+
+    private AssignmentLog(File file, int initialSize) {
+        this.file = file;
+        this.initialSize = initialSize;
+    }
+
+    /**
+     * Opens the log, replaying whatever a previous agent of the same name left in it.
+     */
+    public static AssignmentLog open(File file, int initialSize) throws IOException {
+        AssignmentLog log = new AssignmentLog(file, initialSize);
+        if (file.exists() && file.length() >= HEADER) {
+            log.map((int) file.length());
+            log.replay();
+        }
+        else log.rewrite(initialSize);
+        return log;
+    }
+
+    /**
+     * Removes the logs of a previous run, so a fresh platform does not resurrect its tasks.
+     */
+    public static void reset(File dir) {
+        File[] logs = dir.listFiles((d, name) -> name.endsWith(".log"));
+        if (logs != null) for (File log : logs) log.delete();
+    }
+
+    public Map<String, Entry> tasks() {
+        return Collections.unmodifiableMap(live);
+    }
+
+    public int epoch() {
+        return epoch;
+    }
+
+    public void added(String task, int complexity, String owner) throws IOException {
+        byte[] name = task.getBytes(StandardCharsets.UTF_8);
+        byte[] ownerName = owner.getBytes(StandardCharsets.UTF_8);
+        live.put(task, new Entry(complexity, owner));
+        if (!fits(1 + 4 + 2 + name.length + 2 + ownerName.length)) return;
+        buffer.put(ADD).putInt(complexity);
+        putString(name);
+        putString(ownerName);
+        commit();
+    }
+
+    public void removed(String task) throws IOException {
+        if (live.remove(task) == null) return;
+        byte[] name = task.getBytes(StandardCharsets.UTF_8);
+        if (!fits(1 + 2 + name.length)) return;
+        buffer.put(REMOVE);
+        putString(name);
+        commit();
+    }
+
+    public void epoch(int epoch) throws IOException {
+        this.epoch = epoch;
+        if (!fits(1 + 4)) return;
+        buffer.put(EPOCH).putInt(epoch);
+        commit();
+    }
+
+    /**
+     * Deletes the file: a computer that stops normally has nothing to come back to.
+     */
+    public void delete() {
+        buffer = null;
+        file.delete();
+    }
+
+    public void close() {
+        if (buffer != null) buffer.force();
+    }
+
+    // False when the record is already part of the live state just written by compaction
+    private boolean fits(int recordSize) throws IOException {
+        if (buffer.remaining() >= recordSize) return true;
+        int liveSize = HEADER + 1 + 4;
+        for (Map.Entry<String, Entry> task : live.entrySet())
+            liveSize += 1 + 4 + 2 + utf8Length(task.getKey()) + 2 + utf8Length(task.getValue().owner());
+        int size = Math.max(initialSize, buffer.capacity());
+        while (liveSize > size / 2) size *= 2;
+        rewrite(size);
+        return false;
+    }
+
+    private void commit() {
+        // The record counts only once the end offset moves past it
+        buffer.putLong(8, buffer.position());
+    }
+
+    private void putString(byte[] bytes) {
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+
+    private String getString() {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int utf8Length(String value) {
+        return value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private void map(int size) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private void replay() throws IOException {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            rewrite(initialSize);
+            return;
+        }
+        long end = Math.min(buffer.getLong(8), buffer.capacity());
+        buffer.position(HEADER);
+        try {
+            while (buffer.position() < end) {
+                byte type = buffer.get();
+                if (type == ADD) {
+                    int complexity = buffer.getInt();
+                    String name = getString();
+                    live.put(name, new Entry(complexity, getString()));
+                }
+                else if (type == REMOVE) live.remove(getString());
+                else if (type == EPOCH) epoch = buffer.getInt();
+                else break;
+            }
+        } catch (BufferUnderflowException e) {
+            // A record cut off by the end of the file: the committed prefix is what counts
+        }
+        buffer.position((int) Math.min(buffer.position(), end));
+    }
+
+    // Compaction: the live state goes to a new file that then replaces the old one
+    private void rewrite(int size) throws IOException {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        File tmp = new File(file.getPath() + ".tmp");
+        tmp.delete();
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw"); FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer fresh = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            fresh.putInt(MAGIC).putInt(VERSION).putLong(HEADER);
+            buffer = fresh;
+            for (Map.Entry<String, Entry> task : live.entrySet()) {
+                buffer.put(ADD).putInt(task.getValue().complexity());
+                putString(task.getKey().getBytes(StandardCharsets.UTF_8));
+                putString(task.getValue().owner().getBytes(StandardCharsets.UTF_8));
+            }
+            buffer.put(EPOCH).putInt(epoch);
+            buffer.putLong(8, buffer.position());
+            fresh.force();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
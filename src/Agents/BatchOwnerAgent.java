@@ -0,0 +1,250 @@
+package Agents;
+
+import Metrics.MetricsRegistry;
+import jade.core.AID;
+import jade.core.behaviours.OneShotBehaviour;
+import jade.core.behaviours.WakerBehaviour;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.domain.FIPAException;
+import jade.lang.acl.ACLMessage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Owner of tasks kept as data, placed in rounds with one CFP per round. A round asks every
+ * computer for a proposal of type P and assigns its tasks once all of them have answered
+ * or the deadline has expired, with one ACCEPT per chosen computer. The owner then follows
+ * the "Remove" messages of balancing and answers the "Question"s of computers.
+ * Subclasses supply the tasks of a round, the proposal format and the assignment.
+ */
+public abstract class BatchOwnerAgent<P> extends CreditAgent {
+    private final String ontology;
+    private final String serviceName;
+    private final Map<AID, P> proposals = new HashMap<>();
+    private final long proposalTimeout = Settings.getLong("proposalTimeout", 5000);
+    private int round = 0;
+    private boolean awaiting = false;
+
+    /**
+     * @param ontology    ontology of the round's CFP and of the proposals answering it
+     * @param serviceName name of the "tasks" service registered in yellow pages
+     */
+    protected BatchOwnerAgent(String ontology, String serviceName) {
+        this.ontology = ontology;
+        this.serviceName = serviceName;
+    }
+
+    protected void setup() {
+        // Register in yellow pages as the owner of the tasks
+        DFAgentDescription dfd = new DFAgentDescription();
+        dfd.setName(getAID());
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType("tasks");
+        sd.setName(serviceName);
+        dfd.addServices(sd);
+        try {
+            DirectoryCache.register(this, dfd);
+        }
+        catch (FIPAException fe) {
+            fe.printStackTrace();
+        }
+        registerMetrics();
+
+        // One router reads the mailbox and hands messages over by performative and ontology
+        addBehaviour(new MessageRouter(this)
+                .on(ACLMessage.PROPOSE, ontology, this::onProposal)
+                .on(ACLMessage.INFORM, "Remove", this::onRemove)
+                .on(ACLMessage.INFORM, "Question", this::onQuestion));
+    }
+
+    protected void takeDown() {
+        // Deregister in yellow pages
+        try {
+            DirectoryCache.deregister(this);
+        }
+        catch (FIPAException fe) {
+            fe.printStackTrace();
+        }
+        unregisterMetrics();
+    }
+
+    // Complexities of the tasks to place in the current round
+    protected abstract int[] roundComplexities();
+
+    // Local agent name of task i of the current round
+    protected abstract String taskName(int i);
+
+    // Content of the round's CFP
+    protected abstract void prepare(ACLMessage cfp, int[] complexities);
+
+    protected abstract P proposal(ACLMessage reply);
+
+    /**
+     * Index into computers for every task of the round, given the proposals of those computers.
+     */
+    protected abstract int[] assign(List<AID> computers, List<P> proposals, int[] complexities);
+
+    // Task i of the current round goes to the computer
+    protected abstract void placed(int i, AID computer);
+
+    // Balancing has moved the task to the computer
+    protected abstract void moved(String task, AID computer);
+
+    // Whether every task of the owner has a computer
+    protected abstract boolean allPlaced();
+
+    // Parameters added to every ACCEPT and REJECT of a round, after its tasks are placed
+    protected void mark(ACLMessage msg) {
+    }
+
+    // Called once the assignment of a round has been sent
+    protected void roundAssigned(int tasks, int computers) {
+    }
+
+    /**
+     * Starts a round for the tasks returned by roundComplexities.
+     */
+    protected void startRound() {
+        round++;
+        awaiting = true;
+        addBehaviour(new SearchComputersBehaviour());
+    }
+
+    private String roundId() {
+        return getLocalName() + "-" + round;
+    }
+
+    private class SearchComputersBehaviour extends OneShotBehaviour {
+        public void action() {
+            // Search in yellow pages, through the container's cache
+            proposals.clear();
+            try {
+                for (AID computer : DirectoryCache.of(myAgent).search(myAgent, "task-executing")) proposals.put(computer, null);
+            }
+            catch (FIPAException fe) {
+                fe.printStackTrace();
+            }
+
+            // The whole round in one CFP; replies to older rounds are ignored
+            ACLMessage cfp = new ACLMessage(ACLMessage.CFP);
+            cfp.setOntology(ontology);
+            cfp.setReplyWith(roundId());
+            for (AID computer : proposals.keySet()) cfp.addReceiver(computer);
+            prepare(cfp, roundComplexities());
+            if (!proposals.isEmpty()) transmit(cfp);
+
+            addBehaviour(new ProposalDeadlineBehaviour(round));
+        }
+    }
+
+    private class ProposalDeadlineBehaviour extends WakerBehaviour {
+        private final int deadlineRound;
+
+        public ProposalDeadlineBehaviour(int deadlineRound) {
+            super(BatchOwnerAgent.this, proposalTimeout);
+            this.deadlineRound = deadlineRound;
+        }
+
+        protected void onWake() {
+            // Place the round on the computers that answered in time
+            if (!awaiting || deadlineRound != round) return;
+            if (proposals.values().stream().anyMatch(Objects::nonNull)) {
+                System.out.println(BatchOwnerAgent.this.getClass().getSimpleName() + " " + getAID().getName() +
+                        " deciding on partial proposals.");
+                assignRound();
+            }
+            // Nobody answered in time: ask again
+            else startRound();
+            passive();
+        }
+    }
+
+    private void onProposal(ACLMessage reply) {
+        if (!awaiting || !roundId().equals(reply.getInReplyTo()) || !proposals.containsKey(reply.getSender())) return;
+        proposals.put(reply.getSender(), proposal(reply));
+        // The proposal that completes the set triggers the assignment
+        if (!proposals.containsValue(null)) assignRound();
+    }
+
+    // A round keeps searching on its own deadlines until it is placed
+    protected boolean isBusy() {
+        return awaiting;
+    }
+
+    private void assignRound() {
+        awaiting = false;
+        List<AID> computers = new ArrayList<>();
+        List<P> answered = new ArrayList<>();
+        for (Map.Entry<AID, P> entry : proposals.entrySet()) {
+            if (entry.getValue() == null) continue;
+            computers.add(entry.getKey());
+            answered.add(entry.getValue());
+        }
+        int[] complexities = roundComplexities();
+        int[] assignment = assign(computers, answered, complexities);
+
+        Map<AID, List<TaskTransfer>> assignments = new HashMap<>();
+        int local = 0;
+        for (int i = 0; i < complexities.length; i++) {
+            AID computer = computers.get(assignment[i]);
+            placed(i, computer);
+            if (Locality.isLocal(this, computer)) local++;
+            assignments.computeIfAbsent(computer, k -> new ArrayList<>()).add(new TaskTransfer(
+                    new AID(taskName(i), AID.ISLOCALNAME).getName(), complexities[i], ""));
+        }
+        MetricsRegistry.get().placedLocally(local);
+
+        // One assignment message per computer, including those that did not answer in time
+        ACLMessage reject = new ACLMessage(ACLMessage.REJECT_PROPOSAL);
+        reject.setOntology("Batch");
+        mark(reject);
+        for (AID computer : proposals.keySet()) {
+            List<TaskTransfer> assigned = assignments.get(computer);
+            if (assigned != null) {
+                ACLMessage accept = new ACLMessage(ACLMessage.ACCEPT_PROPOSAL);
+                accept.setOntology("Batch");
+                mark(accept);
+                accept.addReceiver(computer);
+                MessageCodec.putTransfers(accept, assigned);
+                transmit(accept);
+            }
+            else reject.addReceiver(computer);
+        }
+        if (reject.getAllReceiver().hasNext()) transmit(reject);
+
+        roundAssigned(complexities.length, assignments.size());
+    }
+
+    private void onRemove(ACLMessage info) {
+        // Tasks moved by balancing: their new computer and names
+        TaskRemoval removal = MessageCodec.getRemoval(info);
+        AID computer = new AID(removal.computer(), AID.ISGUID);
+        for (String task : removal.tasks()) moved(task, computer);
+    }
+
+    private void onQuestion(ACLMessage question) {
+        // Answer to question: the owner counts as placed once every task has a computer
+        ACLMessage answer = new ACLMessage(ACLMessage.INFORM);
+        answer.setOntology("Answer");
+        MessageCodec.putBoolean(answer, allPlaced());
+        answer.addReceiver(question.getSender());
+        transmit(answer);
+    }
+
+    /**
+     * Tells the computers of the last round that every task is placed, for owners that only
+     * learn so after the round has been assigned.
+     */
+    protected void pushState() {
+        ACLMessage state = new ACLMessage(ACLMessage.INFORM);
+        state.setOntology("Answer");
+        MessageCodec.putBoolean(state, true);
+        for (AID computer : proposals.keySet()) state.addReceiver(computer);
+        if (state.getAllReceiver().hasNext()) transmit(state);
+    }
+}
@@ -0,0 +1,256 @@
+package Agents;
+
+import jade.core.AID;
+import jade.core.behaviours.TickerBehaviour;
+import jade.domain.DFSubscriber;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.domain.FIPAException;
+import jade.lang.acl.ACLMessage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Places tasks on a group of computers without asking every computer. Computers of the
+ * group report their load here; a task sends one CFP to a broker, which either picks the
+ * best computer of its group or forwards the task once to a peer whose summary promises
+ * an earlier finish. Brokers exchange summaries and placed counts periodically.
+ */
+public class BrokerAgent extends CreditAgent {
+    // Define variables
+    private Map<AID, ComputerInfo> computers = new HashMap<>();
+    private Map<Integer, LoadIndex<AID>> byCapacity = new TreeMap<>();
+    private Map<AID, LoadSummary> peers = new HashMap<>();
+    private int placed = 0;
+    private int reportedPlaced = -1;
+    private boolean summaryChanged = false;
+    private long summaryInterval = Settings.getLong("brokerInterval", 200);
+
+    protected void setup() {
+        // Register in yellow pages
+        DFAgentDescription dfd = new DFAgentDescription();
+        dfd.setName(getAID());
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType("task-broker");
+        sd.setName("JADE-Broker");
+        dfd.addServices(sd);
+        try {
+            DirectoryCache.register(this, dfd);
+        }
+        catch (FIPAException fe) {
+            fe.printStackTrace();
+        }
+        registerMetrics();
+
+        // Add Behaviours; one router reads the mailbox and hands messages over by performative and ontology
+        addBehaviour(new MessageRouter(this)
+                .on(ACLMessage.INFORM, "Load-report", this::onLoadReport)
+                .on(ACLMessage.INFORM, "Broker-summary", this::onSummary)
+                .on(ACLMessage.CFP, this::onRequest));
+        addBehaviour(new PeerSubscriptionBehaviour());
+        addBehaviour(new SummarySendBehaviour());
+
+        System.out.println("BrokerAgent " + getAID().getName() + " is ready.");
+    }
+
+    protected void takeDown() {
+        // Deregister in yellow pages
+        try {
+            DirectoryCache.deregister(this);
+        }
+        catch (FIPAException fe) {
+            fe.printStackTrace();
+        }
+        unregisterMetrics();
+
+        System.out.println("BrokerAgent " + getAID().getName() + " is terminated. Placed " + placed + " tasks.");
+    }
+
+    private void onLoadReport(ACLMessage report) {
+        // Getting current load of a computer of my group
+        updateComputer(report.getSender(), MessageCodec.getComputerInfo(report));
+    }
+
+    private void updateComputer(AID computer, ComputerInfo info) {
+        ComputerInfo old = computers.put(computer, info);
+        if (old != null && old.capacity() != info.capacity()) byCapacity.get(old.capacity()).remove(computer);
+        byCapacity.computeIfAbsent(info.capacity(), k -> new LoadIndex<>(AID::compareTo)).update(computer, info.totalTime());
+        summaryChanged = true;
+    }
+
+    private void onRequest(ACLMessage cfp) {
+        // Getting a task, either from the task itself or forwarded by a peer broker
+        TaskTransfer task;
+        String replyWith;
+        boolean forwarded = "Broker-forward".equals(cfp.getOntology());
+        if (forwarded) {
+            task = MessageCodec.getTransfers(cfp).get(0);
+            replyWith = cfp.getConversationId();
+        }
+        else {
+            task = new TaskTransfer(cfp.getSender().getName(), MessageCodec.getInt(cfp), "");
+            replyWith = cfp.getReplyWith();
+        }
+
+        // A forwarded task is always placed here, so a request makes at most one extra hop
+        AID peer = forwarded ? null : betterPeer(task.complexity());
+        if (peer != null) forward(peer, task, replyWith);
+        else if (!computers.isEmpty()) place(task, replyWith);
+        // Nobody to place on yet: the task asks again after its deadline
+    }
+
+    private double localBestTime(int complexity) {
+        double best = Double.MAX_VALUE;
+        for (Map.Entry<Integer, LoadIndex<AID>> entry : byCapacity.entrySet())
+            if (entry.getValue().size() > 0)
+                best = Math.min(best, entry.getValue().min() + (double) complexity / entry.getKey());
+        return best;
+    }
+
+    private AID betterPeer(int complexity) {
+        double bestTime = localBestTime(complexity);
+        AID bestPeer = null;
+        for (Map.Entry<AID, LoadSummary> entry : peers.entrySet()) {
+            double time = entry.getValue().bestTime(complexity);
+            if (time < bestTime) {
+                bestTime = time;
+                bestPeer = entry.getKey();
+            }
+        }
+        return bestPeer;
+    }
+
+    private void forward(AID peer, TaskTransfer task, String replyWith) {
+        ACLMessage forward = new ACLMessage(ACLMessage.CFP);
+        forward.setOntology("Broker-forward");
+        forward.setConversationId(replyWith);
+        MessageCodec.putTransfers(forward, List.of(task));
+        forward.addReceiver(peer);
+        transmit(forward);
+    }
+
+    private void place(TaskTransfer task, String replyWith) {
+        // Computer of my group with the earliest finish time
+        AID bestComputer = null;
+        double bestTime = Double.MAX_VALUE;
+        for (Map.Entry<Integer, LoadIndex<AID>> entry : byCapacity.entrySet()) {
+            if (entry.getValue().size() == 0) continue;
+            AID computer = entry.getValue().select(0);
+            double time = entry.getValue().load(computer) + (double) task.complexity() / entry.getKey();
+            if (time < bestTime) {
+                bestTime = time;
+                bestComputer = computer;
+            }
+        }
+
+        // Count the task right away so the next request does not pick the same computer blindly
+        updateComputer(bestComputer, new ComputerInfo(bestTime, computers.get(bestComputer).capacity()));
+        placed++;
+
+        ACLMessage accept = new ACLMessage(ACLMessage.ACCEPT_PROPOSAL);
+        accept.setOntology("Broker");
+        MessageCodec.putTransfers(accept, List.of(task));
+        accept.addReceiver(bestComputer);
+        transmit(accept);
+
+        ACLMessage placement = new ACLMessage(ACLMessage.INFORM);
+        placement.setOntology("Broker");
+        MessageCodec.putName(placement, bestComputer.getName());
+        placement.setInReplyTo(replyWith);
+        placement.addReceiver(new AID(task.name(), AID.ISGUID));
+        transmit(placement);
+    }
+
+    private LoadSummary summary() {
+        List<Integer> capacities = new ArrayList<>();
+        List<Double> minTimes = new ArrayList<>();
+        for (Map.Entry<Integer, LoadIndex<AID>> entry : byCapacity.entrySet()) {
+            if (entry.getValue().size() == 0) continue;
+            capacities.add(entry.getKey());
+            minTimes.add(entry.getValue().min());
+        }
+        int[] caps = new int[capacities.size()];
+        double[] mins = new double[minTimes.size()];
+        for (int i = 0; i < caps.length; i++) {
+            caps[i] = capacities.get(i);
+            mins[i] = minTimes.get(i);
+        }
+        return new LoadSummary(placed, caps, mins);
+    }
+
+    private class SummarySendBehaviour extends TickerBehaviour {
+        public SummarySendBehaviour() {
+            super(BrokerAgent.this, summaryInterval);
+        }
+
+        protected void onTick() {
+            // Tell peers how my group looks now
+            if (summaryChanged && !peers.isEmpty()) {
+                ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+                msg.setOntology("Broker-summary");
+                MessageCodec.putLoadSummary(msg, summary());
+                for (AID peer : peers.keySet()) msg.addReceiver(peer);
+                transmit(msg);
+                summaryChanged = false;
+            }
+
+            // Tell my computers how many tasks are placed overall, so they know when to start balancing
+            int globalPlaced = globalPlaced();
+            if (globalPlaced != reportedPlaced && !computers.isEmpty()) {
+                ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+                msg.setOntology("Placed");
+                MessageCodec.putInt(msg, globalPlaced);
+                for (AID computer : computers.keySet()) msg.addReceiver(computer);
+                transmit(msg);
+                reportedPlaced = globalPlaced;
+            }
+            passive();
+        }
+    }
+
+    private int globalPlaced() {
+        int globalPlaced = placed;
+        for (LoadSummary summary : peers.values()) globalPlaced += summary.placed();
+        return globalPlaced;
+    }
+
+    // Changes not yet passed on by the ticker; once they are, its messages only repeat what is known
+    protected boolean isBusy() {
+        return summaryChanged && !peers.isEmpty() || globalPlaced() != reportedPlaced && !computers.isEmpty();
+    }
+
+    private void onSummary(ACLMessage msg) {
+        peers.put(msg.getSender(), MessageCodec.getLoadSummary(msg));
+    }
+
+    private class PeerSubscriptionBehaviour extends DFSubscriber {
+        public PeerSubscriptionBehaviour() {
+            super(BrokerAgent.this, brokerTemplate());
+        }
+
+        public void onRegister(DFAgentDescription dfd) {
+            DirectoryCache.of(BrokerAgent.this).registered("task-broker", dfd);
+            if (dfd.getName().equals(getAID()) || peers.containsKey(dfd.getName())) return;
+            // Nothing is known about the new peer yet; it sends its summary on its next tick
+            peers.put(dfd.getName(), new LoadSummary(0, new int[0], new double[0]));
+            summaryChanged = true;
+        }
+
+        public void onDeregister(DFAgentDescription dfd) {
+            DirectoryCache.of(BrokerAgent.this).deregistered(dfd.getName());
+            peers.remove(dfd.getName());
+        }
+    }
+
+    static DFAgentDescription brokerTemplate() {
+        DFAgentDescription template = new DFAgentDescription();
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType("task-broker");
+        template.addServices(sd);
+        return template;
+    }
+}
@@ -1,45 +1,83 @@
 package Agents;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import Metrics.MetricsRegistry;
 import jade.core.AID;
-import jade.core.Agent;
-import jade.core.behaviours.CyclicBehaviour;
 import jade.core.behaviours.OneShotBehaviour;
 import jade.core.behaviours.TickerBehaviour;
-import jade.domain.DFService;
+import jade.core.behaviours.WakerBehaviour;
+import jade.domain.DFSubscriber;
 import jade.domain.FIPAAgentManagement.DFAgentDescription;
 import jade.domain.FIPAAgentManagement.ServiceDescription;
 import jade.domain.FIPAException;
 import jade.lang.acl.ACLMessage;
-import jade.lang.acl.MessageTemplate;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.stream.Collectors;
 
-public class ComputerAgent extends Agent {
+public class ComputerAgent extends CreditAgent {
     private String computerName;
     private int capacity;
     private double totalTime = 0;
     private double delta = 2.0;
-    private Map<AID, String> computers = new HashMap<>();
+    private int maxTransferTasks = Settings.getInt("maxTransferTasks", 64);
+    private Map<AID, ComputerInfo> computers = new HashMap<>();
+    private LoadIndex<AID> loadIndex = new LoadIndex<>(AID::compareTo);
     private Map<AID, Boolean> tasks = new HashMap<>();
-    private List<Map.Entry<AID, Integer>> myTasks = new ArrayList<>();
-    private Queue<ACLMessage> CFPs = new LinkedList<>();
+    private TaskStore<AID> myTasks = new TaskStore<>();
+    private Map<AID, AID> taskOwners = new HashMap<>();
+    private AID broker = null;
+    private int placedTasks = 0;
+    // Открытые предложения задачам: учитываются в следующих предложениях, пока не пришел ответ
+    private Reservations<AID> offers = new Reservations<>(Settings.getLong("reservationTimeout",
+            Settings.getLong("proposalTimeout", 5000) + 1000));
     
-    // Парная балансировка
-    private AID currentPartner = null;
-    private boolean isBalancing = false;
-    private int unchangedRounds = 0;
-    private double lastTotalTime = 0;
-    private int lastTaskCount = 0;
-    private int totalTasksInSystem = 0;
+    // Парная балансировка по эпохам: в каждой эпохе все пары работают одновременно на общем снимке
     private boolean balancingInitiated = false;
+    private boolean initiating = false;
+    private boolean balancing = false;
+    private int epoch = 0;
+    private Set<AID> reported = new HashSet<>();
+    private Map<Integer, Map<AID, ComputerInfo>> futureInfo = new HashMap<>();
+    private Map<Integer, AID> earlyExchanges = new HashMap<>();
+    private AID awaitingFrom = null;
+    private Map<AID, Double> previousSnapshot = null;
+    private long balancingStartedAt = 0;
+    private boolean skipBalancing = false;
+
+    // Диффузионная балансировка: среднее оценивается push-sum, задачи уходят только соседям по оверлею
+    private boolean gossip = Settings.getString("balancing", "epoch").equals("gossip");
+    private PushSum pushSum = new PushSum();
+    private List<AID> neighbours = List.of();
+    private Map<AID, ComputerInfo> neighbourLoad = new HashMap<>();
+    private TickerBehaviour gossipTicker = null;
+    private double lastEstimate = Double.NaN;
+    private int quietRounds = 0;
+    private boolean movedThisRound = false;
+
+    // Контрольная точка назначения: перезапущенный агент с тем же именем продолжает с нее
+    private AssignmentLog checkpoint = null;
+    private Set<AID> restored = null;
+
+    // Режим исполнения: задачи реально выполняются, простаивающий компьютер крадет еще не начатые задачи
+    private ExecutionEngine engine = null;
+    private int executedTasks = 0;
+    // Выполненные задачи не входят в текущую загрузку, но остаются в результатах распределения
+    private TaskStore<AID> doneTasks = new TaskStore<>();
+    private double doneTime = 0;
+    private boolean stealing = false;
+    private int refusals = 0;
+    private boolean idleReported = false;
+    private long stealBackoff = Settings.getLong("stealBackoff", 200);
+    private Random random = new Random();
+
+    // Размещение с учетом близости: хост и контейнер объявляются в каталоге
+    private Locality locality;
+
+    // Обнаружение завершения: до первого ответа каталога компьютер еще не знает, кого спрашивать о задачах
+    private boolean directoryKnown = false;
 
     protected void setup() {
         computerName = getAID().getName();
@@ -47,6 +85,9 @@ public class ComputerAgent extends Agent {
         if (args != null && args.length > 0)
             capacity = Integer.parseInt((String) args[0]);
         else capacity = 1000;
+        // Второй аргумент - брокер группы, если распределение идет через брокеров
+        if (args != null && args.length > 1 && !((String) args[1]).isEmpty())
+            broker = new AID((String) args[1], AID.ISLOCALNAME);
 
         loadDelta();
 
@@ -55,20 +96,45 @@ public class ComputerAgent extends Agent {
         ServiceDescription sd = new ServiceDescription();
         sd.setType("task-executing");
         sd.setName("JADE-Computer");
+        locality = Locality.of(this);
+        locality.advertise(sd);
         dfd.addServices(sd);
         try {
-            DFService.register(this, dfd);
+            DirectoryCache.register(this, dfd);
         } catch (FIPAException fe) {
             fe.printStackTrace();
         }
 
-        addBehaviour(new RequestReceiveBehaviour());
-        addBehaviour(new ProposeSendBehaviour());
-        addBehaviour(new AcceptBehaviour());
-        addBehaviour(new RejectBehaviour());
-        addBehaviour(new TaskSearchBehaviour(this, 1000));
-        addBehaviour(new AnswerGetBehaviour());
-        addBehaviour(new PairBalancingBehaviour());
+        registerMetrics();
+        metrics().trackTotalTime(() -> totalTime + doneTime);
+
+        if (Settings.getBoolean("execute", false)) {
+            int workers = ExecutionEngine.workersFor(capacity, Settings.getInt("capacityPerWorker", 1000));
+            engine = new ExecutionEngine(getLocalName(), capacity, workers,
+                    Settings.getDouble("executionTimeScale", 1.0),
+                    Workload.of(Settings.getString("workload", "sleep")),
+                    (job, nanos) -> postMessage(completed(job, nanos)));
+        }
+        if (Settings.getBoolean("checkpoint", false)) restoreCheckpoint();
+
+        // Все входящие сообщения разбирает один маршрутизатор по (performative, ontology)
+        addBehaviour(new MessageRouter(this)
+                .on(ACLMessage.CFP, this::onCallForProposal)
+                .on(ACLMessage.ACCEPT_PROPOSAL, "Batch", this::onBatchAccept)
+                .on(ACLMessage.ACCEPT_PROPOSAL, "Broker", this::onBrokerAccept)
+                .on(ACLMessage.ACCEPT_PROPOSAL, this::onAccept)
+                .on(ACLMessage.REJECT_PROPOSAL, this::onReject)
+                .on(ACLMessage.INFORM, "Answer", this::onAnswer)
+                .on(ACLMessage.INFORM, "Placed", this::onPlaced)
+                .on(ACLMessage.INFORM, "Computer-info", this::onComputerInfo)
+                .on(ACLMessage.INFORM, "Task-exchange", this::onTaskExchange)
+                .on(ACLMessage.INFORM, "Gossip", this::onGossip)
+                .on(ACLMessage.INFORM, "Completed", this::onCompleted)
+                .on(ACLMessage.REQUEST, "Steal", this::onStealRequest)
+                .on(ACLMessage.REFUSE, "Steal", this::onStealRefused));
+        addBehaviour(new TaskSubscriptionBehaviour());
+        addBehaviour(new ComputerSubscriptionBehaviour());
+        if (broker != null) reportLoad();
 
         System.out.println("ComputerAgent " + computerName + " is ready. Delta=" + delta);
     }
@@ -84,37 +150,19 @@ public class ComputerAgent extends Agent {
     }
 
     protected void takeDown() {
+        if (engine != null) engine.shutdown();
+        // Штатная остановка: восстанавливать нечего
+        if (checkpoint != null) checkpoint.delete();
         try {
-            DFService.deregister(this);
+            DirectoryCache.deregister(this);
         } catch (FIPAException fe) {
             fe.printStackTrace();
         }
+        unregisterMetrics();
 
-        ObjectMapper mapper = new ObjectMapper();
-        File resultsFile = new File("src/Files/results.json");
-        ObjectNode root;
-
+        // Свой сегмент результатов, общий results.json собирается после остановки платформы
         try {
-            if (resultsFile.exists()) root = (ObjectNode) mapper.readTree(resultsFile);
-            else root = mapper.createObjectNode();
-
-            ObjectNode computerNode = mapper.createObjectNode();
-            computerNode.put("capacity", capacity);
-            computerNode.putArray("tasks");
-            computerNode.put("total_time", totalTime);
-
-            ArrayNode tasksArray = (ArrayNode) computerNode.get("tasks");
-            for (Map.Entry<AID, Integer> entry : myTasks) {
-                ObjectNode taskNode = mapper.createObjectNode();
-                AID task = entry.getKey();
-                int complexity = entry.getValue();
-                taskNode.put("name", task.getName());
-                taskNode.put("complexity", complexity);
-                tasksArray.add(taskNode);
-            }
-
-            root.set(computerName, computerNode);
-            mapper.writerWithDefaultPrettyPrinter().writeValue(resultsFile, root);
+            ResultsSink.write(computerName, capacity, totalTime + doneTime, assignedTasks());
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -131,21 +179,19 @@ public class ComputerAgent extends Agent {
         System.out.println();
         System.out.println("Имя компьютера (агента):  " + computerName);
         System.out.println("Производительность:       " + capacity + " оп/с");
-        System.out.println("Суммарное время:          " + String.format("%.2f", totalTime) + " с.");
-        System.out.println("Назначенные задачи:       " + myTasks.size());
+        System.out.println("Суммарное время:          " + String.format("%.2f", totalTime + doneTime) + " с.");
+        System.out.println("Назначенные задачи:       " + (myTasks.size() + doneTasks.size()));
         System.out.println();
 
-        if (!myTasks.isEmpty()) {
+        if (!myTasks.isEmpty() || !doneTasks.isEmpty()) {
             System.out.println("Распределение задач:");
             System.out.println("─".repeat(64));
             System.out.printf("%-20s%-15s%-15s%n", "Задача", "Сложность", "% соотношение");
             System.out.println("─".repeat(64));
 
-            int totalComplexity = myTasks.stream()
-                    .mapToInt(Map.Entry::getValue)
-                    .sum();
+            long totalComplexity = myTasks.totalComplexity() + doneTasks.totalComplexity();
 
-            for (Map.Entry<AID, Integer> entry : myTasks) {
+            for (Map.Entry<AID, Integer> entry : assignedTasks()) {
                 String taskName = entry.getKey().getName();
                 int complexity = entry.getValue();
                 double percentage = (totalComplexity > 0) ? (complexity * 100.0 / totalComplexity) : 0;
@@ -157,384 +203,714 @@ public class ComputerAgent extends Agent {
         }
     }
 
-    private class RequestReceiveBehaviour extends CyclicBehaviour {
-        public void action() {
-            ACLMessage cfp = receive(MessageTemplate.MatchPerformative(ACLMessage.CFP));
-            if (cfp != null) {
-                CFPs.add(cfp);
-                tasks.put(cfp.getSender(), false);
-            } else block();
+    // Все назначенные компьютеру задачи: еще не выполненные и уже выполненные
+    private List<Map.Entry<AID, Integer>> assignedTasks() {
+        List<Map.Entry<AID, Integer>> assigned = new ArrayList<>(myTasks.size() + doneTasks.size());
+        for (Map.Entry<AID, Integer> task : myTasks) assigned.add(task);
+        for (Map.Entry<AID, Integer> task : doneTasks) assigned.add(task);
+        return assigned;
+    }
+
+    private void onCallForProposal(ACLMessage cfp) {
+        tasks.put(cfp.getSender(), false);
+
+        ACLMessage propose = cfp.createReply();
+        propose.setPerformative(ACLMessage.PROPOSE);
+        if ("Schedule".equals(cfp.getOntology())) {
+            // Планировщику нужны только текущее время и производительность
+            MessageCodec.putComputerInfo(propose, new ComputerInfo(totalTime, capacity));
+        } else if ("Batch".equals(cfp.getOntology())) {
+            // Один вектор на весь пакет: текущее время и время завершения каждой задачи
+            MessageCodec.putDoubles(propose, proposalTimes(totalTime, capacity, MessageCodec.getInts(cfp)));
+        } else {
+            // Пачка CFP разбирается подряд, и каждое следующее предложение видит предыдущие
+            double time = (double) MessageCodec.getInt(cfp) / capacity;
+            long now = System.currentTimeMillis();
+            MessageCodec.putDouble(propose, totalTime + offers.reserved(now) + time);
+            offers.offer(cfp.getSender(), time, now);
         }
+        transmit(propose);
     }
 
-    private class ProposeSendBehaviour extends CyclicBehaviour {
-        public void action() {
-            if (!CFPs.isEmpty()) {
-                ACLMessage cfp = CFPs.poll();
-                ACLMessage propose = cfp.createReply();
-                propose.setPerformative(ACLMessage.PROPOSE);
-                propose.setContent(String.valueOf((totalTime + (Double.parseDouble(cfp.getContent()) / capacity))));
-                send(propose);
-            } else block();
+    // Предложение на пакет: текущее время, затем время завершения каждой задачи пакета
+    public static double[] proposalTimes(double totalTime, int capacity, int[] complexities) {
+        double[] times = new double[complexities.length + 1];
+        times[0] = totalTime;
+        for (int i = 0; i < complexities.length; i++)
+            times[i + 1] = totalTime + (double) complexities[i] / capacity;
+        return times;
+    }
+
+    private void onBatchAccept(ACLMessage accept) {
+        // Пакетное назначение, владелец задач - диспетчер
+        List<TaskTransfer> batch = MessageCodec.getTransfers(accept);
+        for (TaskTransfer transfer : batch) {
+            AID taskAID = new AID(transfer.name(), AID.ISGUID);
+            addTask(taskAID, transfer.complexity(), accept.getSender());
         }
+        tasks.put(accept.getSender(), !hasMoreTasks(accept));
+        skipBalancing |= isScheduled(accept);
+        MetricsRegistry.get().placed(batch.size());
+        System.out.println("ComputerAgent " + computerName + " took " + batch.size() +
+                " tasks from " + accept.getSender().getName() + ".");
+        reportLoad();
+        checkAllocationComplete();
     }
 
-    private class AcceptBehaviour extends CyclicBehaviour {
-        public void action() {
-            ACLMessage accept = receive(MessageTemplate.MatchPerformative(ACLMessage.ACCEPT_PROPOSAL));
-            if (accept != null) {
-                AID taskAID = accept.getSender();
-                myTasks.add(Map.entry(taskAID, Integer.parseInt(accept.getContent())));
-                totalTime += Double.parseDouble(accept.getContent()) / capacity;
-                tasks.put(taskAID, true);
-                System.out.println("ComputerAgent " + computerName + " took the " + taskAID.getName() + ".");
-            } else block();
+    private void onBrokerAccept(ACLMessage accept) {
+        // Назначение через брокера, задача сама себе владелец
+        List<TaskTransfer> transfers = MessageCodec.getTransfers(accept);
+        for (TaskTransfer transfer : transfers) {
+            AID taskAID = new AID(transfer.name(), AID.ISGUID);
+            addTask(taskAID, transfer.complexity(), taskAID);
+            tasks.put(taskAID, true);
+            System.out.println("ComputerAgent " + computerName + " took the " + taskAID.getName() + ".");
         }
+        MetricsRegistry.get().placed(transfers.size());
+        reportLoad();
+        checkAllocationComplete();
     }
 
-    private class RejectBehaviour extends CyclicBehaviour {
-        public void action() {
-            ACLMessage reject = receive(MessageTemplate.MatchPerformative(ACLMessage.REJECT_PROPOSAL));
-            if (reject != null) {
-                tasks.put(reject.getSender(), true);
-            } else block();
+    private void onAccept(ACLMessage accept) {
+        AID taskAID = accept.getSender();
+        int complexity = MessageCodec.getInt(accept);
+        offers.release(taskAID);
+        addTask(taskAID, complexity, taskAID);
+        tasks.put(taskAID, true);
+        MetricsRegistry.get().placed(1);
+        System.out.println("ComputerAgent " + computerName + " took the " + taskAID.getName() + ".");
+        checkAllocationComplete();
+    }
+
+    private void addTask(AID taskAID, int complexity, AID owner) {
+        myTasks.add(taskAID, complexity);
+        totalTime += (double) complexity / capacity;
+        if (!owner.equals(taskAID)) taskOwners.put(taskAID, owner);
+        if (checkpoint != null) {
+            try {
+                checkpoint.added(taskAID.getName(), complexity, owner.equals(taskAID) ? "" : owner.getName());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (engine != null) {
+            engine.submit(taskAID, complexity);
+            refusals = 0;
+            idleReported = false;
         }
     }
 
-    private class TaskSearchBehaviour extends TickerBehaviour {
-        public TaskSearchBehaviour(Agent a, long period) {
-            super(a, period);
+    private void onReject(ACLMessage reject) {
+        offers.release(reject.getSender());
+        tasks.put(reject.getSender(), !hasMoreTasks(reject));
+        skipBalancing |= isScheduled(reject);
+        checkAllocationComplete();
+    }
+
+    private class TaskSubscriptionBehaviour extends DFSubscriber {
+        public TaskSubscriptionBehaviour() {
+            super(ComputerAgent.this, taskTemplate());
         }
 
-        public void onTick() {
-            DFAgentDescription template = new DFAgentDescription();
-            ServiceDescription sd = new ServiceDescription();
-            sd.setType("tasks");
-            template.addServices(sd);
-            try {
-                DFAgentDescription[] result = DFService.search(myAgent, template);
-                
-                // Проверка на добавление новых задач
-                int currentTaskCount = result.length;
-                if (currentTaskCount > totalTasksInSystem) {
+        public void onRegister(DFAgentDescription dfd) {
+            // Проверка на добавление новых задач
+            if (!tasks.containsKey(dfd.getName())) {
+                tasks.put(dfd.getName(), false);
+                skipBalancing = false;
+                if (balancingInitiated) {
                     System.out.println("[" + computerName + "] Detected new tasks! Resetting balancing.");
-                    unchangedRounds = 0;
                     balancingInitiated = false;
-                    totalTasksInSystem = currentTaskCount;
-                }
-                
-                for (DFAgentDescription res : result)
-                    if (!tasks.containsKey(res.getName())) tasks.put(res.getName(), false);
-
-                ACLMessage question = new ACLMessage(ACLMessage.INFORM);
-                question.setOntology("Question");
-                for (AID task : tasks.keySet()) question.addReceiver(task);
-                send(question);
-
-                // Начинаем балансировку, если все задачи распределены
-                if (!tasks.containsValue(false) && !tasks.isEmpty() && !balancingInitiated) {
-                    balancingInitiated = true;
-                    addBehaviour(new InitiateBalancingBehaviour());
                 }
-            } catch (FIPAException fe) {
-                fe.printStackTrace();
             }
         }
+
+        public void onDeregister(DFAgentDescription dfd) {
+            tasks.remove(dfd.getName());
+            // Уведомление каталога не несет кредита: начинаем балансировку отсюда, только пока кредит еще у нас,
+            // иначе ее начнет следующее сообщение с кредитом
+            if (holdsCredit()) checkAllocationComplete();
+        }
+
+        public void afterFirstNotification(DFAgentDescription[] dfds) {
+            if (restored != null) reconcileRestored(dfds);
+            // Задачи, зарегистрированные раньше нас, могли не прислать нам CFP - спрашиваем их один раз
+            ACLMessage question = new ACLMessage(ACLMessage.INFORM);
+            question.setOntology("Question");
+            for (DFAgentDescription dfd : dfds) question.addReceiver(dfd.getName());
+            if (question.getAllReceiver().hasNext()) transmit(question);
+            directoryKnown = true;
+            passive();
+        }
     }
 
-    private class AnswerGetBehaviour extends CyclicBehaviour {
-        public void action() {
-            ACLMessage answer = receive(MessageTemplate.and(
-                    MessageTemplate.MatchOntology("Answer"),
-                    MessageTemplate.MatchPerformative(ACLMessage.INFORM)));
-            if (answer != null) {
-                tasks.put(answer.getSender(), Boolean.valueOf(answer.getContent()));
-            } else block();
+    // Кэш каталога контейнера узнает о других компьютерах сразу, а не по истечении аренды
+    private class ComputerSubscriptionBehaviour extends DFSubscriber {
+        public ComputerSubscriptionBehaviour() {
+            super(ComputerAgent.this, DirectoryCache.template("task-executing"));
+        }
+
+        public void onRegister(DFAgentDescription dfd) {
+            DirectoryCache.of(ComputerAgent.this).registered("task-executing", dfd);
+        }
+
+        public void onDeregister(DFAgentDescription dfd) {
+            DirectoryCache.of(ComputerAgent.this).deregistered(dfd.getName());
         }
     }
 
+    private static DFAgentDescription taskTemplate() {
+        DFAgentDescription template = new DFAgentDescription();
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType("tasks");
+        template.addServices(sd);
+        return template;
+    }
+
+    private void restoreCheckpoint() {
+        long start = System.nanoTime();
+        try {
+            checkpoint = AssignmentLog.open(new File(Settings.getString("checkpointDir", "src/Files/checkpoints"),
+                    getLocalName() + ".log"), Settings.getInt("checkpointSize", 1 << 20));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (checkpoint.tasks().isEmpty()) return;
+
+        // Агент с этим именем уже работал: его задачи и эпоха берутся из журнала, без нового распределения
+        restored = new HashSet<>();
+        for (Map.Entry<String, AssignmentLog.Entry> task : checkpoint.tasks().entrySet()) {
+            AID taskAID = new AID(task.getKey(), AID.ISGUID);
+            int complexity = task.getValue().complexity();
+            myTasks.add(taskAID, complexity);
+            totalTime += (double) complexity / capacity;
+            if (task.getValue().owner().isEmpty()) tasks.put(taskAID, true);
+            else {
+                AID owner = new AID(task.getValue().owner(), AID.ISGUID);
+                taskOwners.put(taskAID, owner);
+                tasks.put(owner, true);
+            }
+            if (engine != null) engine.submit(taskAID, complexity);
+            restored.add(taskAID);
+        }
+        epoch = checkpoint.epoch();
+        System.out.println("[" + computerName + "] Restored " + restored.size() + " task(s), total time " +
+                         String.format("%.2f", totalTime) + ", epoch " + epoch + " from checkpoint in " +
+                         (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    private void reconcileRestored(DFAgentDescription[] dfds) {
+        // Задачи из журнала, чьих агентов больше нет в каталоге, выбрасываются; остальные ответят на Question
+        Set<AID> alive = new HashSet<>();
+        for (DFAgentDescription dfd : dfds) alive.add(dfd.getName());
+        int dropped = 0;
+        for (AID task : restored) {
+            if (taskOwners.containsKey(task) || alive.contains(task) || !myTasks.contains(task)) continue;
+            totalTime -= (double) myTasks.remove(task) / capacity;
+            tasks.remove(task);
+            checkpointRemoved(task);
+            dropped++;
+        }
+        restored = null;
+        if (dropped > 0) System.out.println("[" + computerName + "] Dropped " + dropped + " restored task(s) with no agent");
+    }
+
+    private void checkpointRemoved(AID task) {
+        if (checkpoint == null) return;
+        try {
+            checkpoint.removed(task.getName());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void checkAllocationComplete() {
+        // Начинаем балансировку, как только все задачи распределены;
+        // при работе через брокеров об остальных задачах известно только их общее число
+        boolean allPlaced = !tasks.containsValue(false) || (broker != null && placedTasks >= tasks.size());
+        if (engine != null) {
+            // При исполнении нагрузку выравнивает кража задач, а не балансировка по прогнозу
+            if (allPlaced && !tasks.isEmpty()) steal();
+            return;
+        }
+        if (allPlaced && !tasks.isEmpty() && !balancingInitiated && !skipBalancing) {
+            balancingInitiated = true;
+            balancingStartedAt = System.nanoTime();
+            if (gossip) startGossip();
+            else {
+                // Кредит остается у нас, пока первая эпоха не разослана
+                initiating = true;
+                addBehaviour(new InitiateBalancingBehaviour());
+            }
+        }
+    }
+
+    // Расписание планировщика уже оптимально по времени завершения, балансировка не нужна
+    private static boolean isScheduled(ACLMessage msg) {
+        return "true".equals(msg.getUserDefinedParameter("skip-balancing"));
+    }
+
+    // Пул задач размещает задачи окнами: пока у него есть неразмещенные задачи, распределение не закончено
+    private static boolean hasMoreTasks(ACLMessage msg) {
+        return "true".equals(msg.getUserDefinedParameter("more-tasks"));
+    }
+
+    private void onPlaced(ACLMessage placed) {
+        placedTasks = MessageCodec.getInt(placed);
+        checkAllocationComplete();
+    }
+
+    private void reportLoad() {
+        // Брокер группы выбирает компьютер по этим данным
+        if (broker == null) return;
+        ACLMessage report = new ACLMessage(ACLMessage.INFORM);
+        report.setOntology("Load-report");
+        MessageCodec.putComputerInfo(report, new ComputerInfo(totalTime, capacity));
+        report.addReceiver(broker);
+        transmit(report);
+    }
+
+    private void onAnswer(ACLMessage answer) {
+        tasks.put(answer.getSender(), MessageCodec.getBoolean(answer));
+        checkAllocationComplete();
+    }
+
     private class InitiateBalancingBehaviour extends OneShotBehaviour {
         public void action() {
-            DFAgentDescription template = new DFAgentDescription();
-            ServiceDescription sd = new ServiceDescription();
-            sd.setType("task-executing");
-            template.addServices(sd);
+            initiating = false;
+            // Балансировка уже идет - новые данные попадут в следующую эпоху
+            if (balancing) {
+                passive();
+                return;
+            }
+
             try {
-                DFAgentDescription[] result = DFService.search(myAgent, template);
-                
-                // Очистка только нульевых значений
-                for (DFAgentDescription res : result)
-                    if (!computers.containsKey(res.getName())) computers.put(res.getName(), null);
-
-                // Отправляем свои данные
-                ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
-                msg.setOntology("Computer-info");
-                msg.setContent(String.valueOf(totalTime) + " " + String.valueOf(capacity));
-                for (AID computer : computers.keySet())
-                    if (!Objects.equals(computer.getName(), computerName)) msg.addReceiver(computer);
-                send(msg);
+                for (AID computer : DirectoryCache.of(myAgent).search(myAgent, "task-executing"))
+                    if (!computers.containsKey(computer)) computers.put(computer, null);
             } catch (FIPAException fe) {
                 fe.printStackTrace();
             }
+
+            balancing = true;
+            previousSnapshot = null;
+            startEpoch(epoch + 1);
+            passive();
         }
     }
 
-    private class PairBalancingBehaviour extends CyclicBehaviour {
-        private boolean readyToPair = false;
-        
-        public void action() {
-            // Прием данных от других компьютеров
-            ACLMessage msg = receive(MessageTemplate.and(
-                    MessageTemplate.MatchOntology("Computer-info"),
-                    MessageTemplate.MatchPerformative(ACLMessage.INFORM)));
-            
-            if (msg != null) {
-                computers.put(msg.getSender(), msg.getContent());
-                computers.put(getAID(), String.valueOf(totalTime) + " " + String.valueOf(capacity));
-                
-                if (!computers.containsValue(null) && !isBalancing) {
-                    // Все компьютеры ответили
-                    startPairBalancing();
-                }
-                return;
-            }
+    private static String epochId(int epoch) {
+        return "epoch-" + epoch;
+    }
 
-            // Прием запроса на паринг
-            ACLMessage pairRequest = receive(MessageTemplate.and(
-                    MessageTemplate.MatchOntology("Pair-request"),
-                    MessageTemplate.MatchPerformative(ACLMessage.REQUEST)));
-            
-            if (pairRequest != null) {
-                if (isBalancing) {
-                    ACLMessage refuse = pairRequest.createReply();
-                    refuse.setPerformative(ACLMessage.REFUSE);
-                    send(refuse);
-                } else {
-                    isBalancing = true;
-                    currentPartner = pairRequest.getSender();
-                    readyToPair = true;
-                    
-                    ACLMessage accept = pairRequest.createReply();
-                    accept.setPerformative(ACLMessage.AGREE);
-                    accept.setOntology("Pair-accept");
-                    send(accept);
-                    
-                    System.out.println("[" + computerName + "] Accepted pairing with " + currentPartner.getLocalName());
-                }
-                return;
-            }
+    private static int epochOf(ACLMessage msg) {
+        String id = msg.getConversationId();
+        if (id == null || !id.startsWith("epoch-")) return -1;
+        return Integer.parseInt(id.substring("epoch-".length()));
+    }
 
-            // Остальные сообщения
-            if (readyToPair) {
-                ACLMessage taskExchange = receive(MessageTemplate.and(
-                        MessageTemplate.MatchOntology("Task-exchange"),
-                        MessageTemplate.MatchPerformative(ACLMessage.INFORM)));
-                
-                if (taskExchange != null) {
-                    handleTaskExchange(taskExchange);
-                    readyToPair = false;
-                    return;
-                }
-                
-                ACLMessage exchangeComplete = receive(MessageTemplate.and(
-                        MessageTemplate.MatchOntology("Exchange-complete"),
-                        MessageTemplate.MatchPerformative(ACLMessage.INFORM)));
-                
-                if (exchangeComplete != null) {
-                    System.out.println("[" + computerName + "] Exchange completed.");
-                    isBalancing = false;
-                    currentPartner = null;
-                    readyToPair = false;
-                    return;
-                }
+    private void startEpoch(int newEpoch) {
+        epoch = newEpoch;
+        reported.clear();
+        awaitingFrom = null;
+        if (checkpoint != null) {
+            try {
+                checkpoint.epoch(epoch);
+            } catch (IOException e) {
+                e.printStackTrace();
             }
+        }
 
-            block();
-        }
-
-        private void startPairBalancing() {
-            // Расчет среднего
-            double avgTime = computers.values().stream()
-                    .filter(Objects::nonNull)
-                    .mapToDouble(s -> Double.parseDouble(s.split(" ")[0]))
-                    .average()
-                    .orElse(0.0);
-
-            // Проверка критерия остановки
-            long withinDelta = computers.values().stream()
-                    .filter(Objects::nonNull)
-                    .mapToDouble(s -> Double.parseDouble(s.split(" ")[0]))
-                    .filter(t -> Math.abs(t - avgTime) <= delta)
-                    .count();
-
-            // Проверка на изменения
-            boolean hasChanged = Math.abs(totalTime - lastTotalTime) > 0.001 || myTasks.size() != lastTaskCount;
-            
-            if (!hasChanged) {
-                unchangedRounds++;
-            } else {
-                unchangedRounds = 0;
-            }
+        // Свои данные в снимок эпохи и всем остальным
+        computers.put(getAID(), new ComputerInfo(totalTime, capacity));
+        loadIndex.update(getAID(), totalTime);
+        reported.add(getAID());
+
+        ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+        msg.setOntology("Computer-info");
+        msg.setConversationId(epochId(epoch));
+        MessageCodec.putComputerInfo(msg, new ComputerInfo(totalTime, capacity));
+        for (AID computer : computers.keySet())
+            if (!Objects.equals(computer.getName(), computerName)) msg.addReceiver(computer);
+        if (msg.getAllReceiver().hasNext()) transmit(msg);
+
+        // Данные, пришедшие раньше, чем мы сюда дошли
+        Map<AID, ComputerInfo> early = futureInfo.remove(epoch);
+        if (early != null) for (Map.Entry<AID, ComputerInfo> entry : early.entrySet())
+            applyInfo(entry.getKey(), entry.getValue());
+        futureInfo.keySet().removeIf(e -> e < epoch);
+
+        checkSnapshot();
+    }
 
-            lastTotalTime = totalTime;
-            lastTaskCount = myTasks.size();
+    private void applyInfo(AID computer, ComputerInfo info) {
+        computers.put(computer, info);
+        loadIndex.update(computer, info.totalTime());
+        reported.add(computer);
+    }
 
-            if (withinDelta >= computers.size() || unchangedRounds >= 3) {
-                System.out.println("[" + computerName + "] Balancing complete. Avg=" + String.format("%.2f", avgTime) + 
-                                 ", My time=" + String.format("%.2f", totalTime) + 
-                                 ", Deviation=" + String.format("%.2f", Math.abs(totalTime - avgTime)) +
-                                 ", Unchanged rounds=" + unchangedRounds);
-                isBalancing = false;
-                balancingInitiated = false;
-                return;
-            }
+    private void checkSnapshot() {
+        // Снимок эпохи согласован, когда данные прислали все компьютеры
+        if (balancing && awaitingFrom == null && reported.size() >= computers.size()
+                && reported.containsAll(computers.keySet())) runEpoch();
+    }
 
-            // Сортировка компьютеров по загрузке
-            List<Map.Entry<AID, String>> sortedComputers = computers.entrySet().stream()
-                    .filter(e -> e.getValue() != null)
-                    .sorted(Comparator.comparingDouble(e -> Double.parseDouble(e.getValue().split(" ")[0])))
-                    .collect(Collectors.toList());
-
-            // Находим мою позицию
-            int myIndex = -1;
-            for (int i = 0; i < sortedComputers.size(); i++) {
-                if (sortedComputers.get(i).getKey().equals(getAID())) {
-                    myIndex = i;
-                    break;
-                }
+    private void runEpoch() {
+        // Все компьютеры видят один и тот же снимок, поэтому приходят к одним и тем же решениям
+        double avgTime = loadIndex.average();
+        MetricsRegistry.get().balancingRound();
+
+        // Проверка критерия остановки: все в пределах delta или снимок не изменился за эпоху
+        int withinDelta = loadIndex.countWithin(avgTime - delta, avgTime + delta);
+        Map<AID, Double> snapshot = new HashMap<>();
+        for (Map.Entry<AID, ComputerInfo> entry : computers.entrySet())
+            snapshot.put(entry.getKey(), entry.getValue().totalTime());
+        boolean unchanged = snapshot.equals(previousSnapshot);
+        previousSnapshot = snapshot;
+
+        if (withinDelta >= computers.size() || unchanged) {
+            System.out.println("[" + computerName + "] Balancing complete. Epoch=" + epoch +
+                             ", Avg=" + String.format("%.2f", avgTime) +
+                             ", My time=" + String.format("%.2f", totalTime) +
+                             ", Deviation=" + String.format("%.2f", Math.abs(totalTime - avgTime)) +
+                             ", Std=" + String.format("%.2f", loadIndex.deviation()));
+            if (balancingStartedAt != 0) {
+                MetricsRegistry.get().converged((System.nanoTime() - balancingStartedAt) / 1_000_000);
+                balancingStartedAt = 0;
             }
+            balancing = false;
+            return;
+        }
 
-            if (myIndex == -1) return;
+        // Пары: самый легкий с самым тяжелым, второй со вторым и т.д.
+        int size = loadIndex.size();
+        int myIndex = loadIndex.rank(getAID());
+        int pairIndex = size - 1 - myIndex;
+
+        if (pairIndex == myIndex) {
+            // Медиана в этой эпохе без пары
+            startEpoch(epoch + 1);
+        } else if (myIndex > pairIndex) {
+            // Более загруженный отдает задачи и сразу переходит к следующей эпохе
+            performTaskExchange(loadIndex.select(pairIndex), avgTime);
+            startEpoch(epoch + 1);
+        } else {
+            // Менее загруженный ждет Task-exchange этой эпохи (он мог прийти раньше)
+            AID partner = loadIndex.select(pairIndex);
+            if (partner.equals(earlyExchanges.remove(epoch))) startEpoch(epoch + 1);
+            else awaitingFrom = partner;
+        }
+    }
 
-            // Намерение пары
-            int pairIndex = sortedComputers.size() - 1 - myIndex;
-            
-            // Если я - медиана
-            if (sortedComputers.size() % 2 == 1 && myIndex == sortedComputers.size() / 2) {
-                System.out.println("[" + computerName + "] I am the median, skipping pairing.");
-                isBalancing = false;
-                return;
+    private void onComputerInfo(ACLMessage msg) {
+        // Прием данных от других компьютеров
+        int msgEpoch = epochOf(msg);
+        ComputerInfo info = MessageCodec.getComputerInfo(msg);
+        if (!computers.containsKey(msg.getSender())) computers.put(msg.getSender(), null);
+        if (balancing && msgEpoch == epoch) {
+            applyInfo(msg.getSender(), info);
+            checkSnapshot();
+        } else if (msgEpoch > epoch) {
+            // Отправитель уже в следующей эпохе - откладываем до нее
+            futureInfo.computeIfAbsent(msgEpoch, k -> new HashMap<>()).put(msg.getSender(), info);
+            // Остановившийся компьютер присоединяется к новой балансировке
+            if (!balancing && balancingInitiated) {
+                balancing = true;
+                previousSnapshot = null;
+                startEpoch(msgEpoch);
             }
+        }
+        // Данные прошедших эпох отбрасываются
+    }
 
-            // Проверка пары
-            if (pairIndex == myIndex || pairIndex < 0 || pairIndex >= sortedComputers.size()) {
-                isBalancing = false;
-                return;
+    private void onTaskExchange(ACLMessage taskExchange) {
+        // Задачи принимаются всегда, эпоха определяет только ход балансировки
+        handleTaskExchange(taskExchange);
+        if ("steal".equals(taskExchange.getConversationId())) {
+            stealing = false;
+            return;
+        }
+        if ("gossip".equals(taskExchange.getConversationId())) {
+            // Новые задачи могут сделать нас тяжелее соседей - возвращаемся к обмену
+            movedThisRound = true;
+            if (gossipTicker == null && balancingInitiated) startGossip();
+            return;
+        }
+        int msgEpoch = epochOf(taskExchange);
+        if (balancing && msgEpoch == epoch && taskExchange.getSender().equals(awaitingFrom)) {
+            startEpoch(epoch + 1);
+        } else if (msgEpoch >= epoch) {
+            earlyExchanges.put(msgEpoch, taskExchange.getSender());
+        }
+    }
+
+    private void performTaskExchange(AID partner, double avgTime) {
+        ComputerInfo partnerData = computers.get(partner);
+        double partnerTime = partnerData.totalTime();
+        int partnerCapacity = partnerData.capacity();
+
+        // Набор задач, приближающий обоих партнеров к среднему; к далекому партнеру - только если разница окупает передачу
+        List<Map.Entry<AID, Integer>> tasksToGive = totalTime - partnerTime > transferCost(partner)
+                ? myTasks.pollTransfers(totalTime, capacity, partnerTime, partnerCapacity, avgTime, maxTransferTasks)
+                : List.of();
+        MetricsRegistry.get().transfers(tasksToGive.size());
+
+        // Пустой набор тоже отправляется - партнер его ждет
+        sendTasks(partner, tasksToGive, epochId(epoch));
+
+        if (!tasksToGive.isEmpty()) {
+            reportLoad();
+            System.out.println("[" + computerName + "] Epoch " + epoch + ": sent " + tasksToGive.size() +
+                             " task(s) to " + partner.getLocalName());
+        }
+    }
+
+    private double transferCost(AID partner) {
+        return locality.cost(DirectoryCache.of(this).locality(partner));
+    }
+
+    private void sendTasks(AID partner, List<Map.Entry<AID, Integer>> tasksToGive, String conversationId) {
+        // Одно сообщение на весь набор
+        List<TaskTransfer> transfers = new ArrayList<>();
+        Map<AID, List<AID>> removedByOwner = new HashMap<>();
+        for (Map.Entry<AID, Integer> task : tasksToGive) {
+            AID owner = taskOwners.getOrDefault(task.getKey(), task.getKey());
+            transfers.add(new TaskTransfer(task.getKey().getName(), task.getValue(), owner.getName()));
+            removedByOwner.computeIfAbsent(owner, k -> new ArrayList<>()).add(task.getKey());
+            taskOwners.remove(task.getKey());
+            totalTime -= (double) task.getValue() / capacity;
+            checkpointRemoved(task.getKey());
+        }
+
+        ACLMessage exchange = new ACLMessage(ACLMessage.INFORM);
+        exchange.setOntology("Task-exchange");
+        exchange.setConversationId(conversationId);
+        MessageCodec.putTransfers(exchange, transfers);
+        exchange.addReceiver(partner);
+        transmit(exchange);
+
+        // Один Remove на каждого владельца (TaskAgent или диспетчер): новый компьютер и имена задач
+        for (Map.Entry<AID, List<AID>> removed : removedByOwner.entrySet()) {
+            List<String> names = new ArrayList<>();
+            for (AID task : removed.getValue()) names.add(task.getLocalName());
+            ACLMessage removeMsg = new ACLMessage(ACLMessage.INFORM);
+            removeMsg.setOntology("Remove");
+            MessageCodec.putRemoval(removeMsg, new TaskRemoval(partner.getName(), names));
+            removeMsg.addReceiver(removed.getKey());
+            transmit(removeMsg);
+        }
+    }
+
+    private void startGossip() {
+        if (gossipTicker != null) return;
+        try {
+            List<AID> members = Arrays.asList(DirectoryCache.of(this).search(this, "task-executing"));
+            neighbours = Overlay.neighbours(members, getAID(), Settings.getString("overlay", "ring"),
+                    Settings.getInt("overlayDegree", 4), Settings.getLong("overlaySeed", 42));
+        } catch (FIPAException fe) {
+            fe.printStackTrace();
+        }
+        quietRounds = 0;
+        lastEstimate = Double.NaN;
+        if (balancingStartedAt == 0) balancingStartedAt = System.nanoTime();
+        gossipTicker = new TickerBehaviour(this, Settings.getLong("gossipInterval", 100)) {
+            protected void onTick() {
+                gossipRound();
             }
+        };
+        addBehaviour(gossipTicker);
+    }
 
-            AID partner = sortedComputers.get(pairIndex).getKey();
-            
-            // Только менее загруженный инициирует
-            if (myIndex < sortedComputers.size() / 2) {
-                isBalancing = true;
-                currentPartner = partner;
-                
-                ACLMessage request = new ACLMessage(ACLMessage.REQUEST);
-                request.setOntology("Pair-request");
-                request.setContent(String.valueOf(avgTime));
-                request.addReceiver(partner);
-                send(request);
-                
-                System.out.println("[" + computerName + "] Requesting pairing with " + partner.getLocalName());
-                
-                // Передаю задачу
-                performTaskExchange(avgTime);
+    private void gossipRound() {
+        MetricsRegistry.get().balancingRound();
+        pushSum.observe(totalTime);
+        double avgTime = pushSum.estimate();
+
+        // Диффузия: задачи стекают к самому легкому соседу, если он легче нас больше чем на delta
+        // (вместе со стоимостью передачи ему)
+        AID lightest = null;
+        double lightestTime = totalTime - delta;
+        for (AID neighbour : neighbours) {
+            ComputerInfo info = neighbourLoad.get(neighbour);
+            if (info == null) continue;
+            double time = info.totalTime() + transferCost(neighbour);
+            if (time < lightestTime) {
+                lightest = neighbour;
+                lightestTime = time;
+            }
+        }
+        if (lightest != null) {
+            // Цель пары - общее время завершения, но не ниже среднего по всем компьютерам
+            ComputerInfo info = neighbourLoad.get(lightest);
+            double pairTime = (totalTime * capacity + info.totalTime() * info.capacity()) / (capacity + info.capacity());
+            List<Map.Entry<AID, Integer>> tasksToGive = myTasks.pollTransfers(totalTime, capacity,
+                    info.totalTime(), info.capacity(), Math.max(pairTime, avgTime), maxTransferTasks);
+            if (!tasksToGive.isEmpty()) {
+                long moved = 0;
+                for (Map.Entry<AID, Integer> task : tasksToGive) moved += task.getValue();
+                MetricsRegistry.get().transfers(tasksToGive.size());
+                sendTasks(lightest, tasksToGive, "gossip");
+                // Пока сосед не прислал новую загрузку, считаем переданное уже у него
+                neighbourLoad.put(lightest, new ComputerInfo(info.totalTime() + (double) moved / info.capacity(),
+                        info.capacity()));
+                pushSum.observe(totalTime);
+                movedThisRound = true;
+                reportLoad();
+                System.out.println("[" + computerName + "] Gossip: sent " + tasksToGive.size() +
+                                 " task(s) to " + lightest.getLocalName());
             }
         }
 
-        private void performTaskExchange(double avgTime) {
-            if (currentPartner == null) return;
-            
-            String partnerData = computers.get(currentPartner);
-            if (partnerData == null) return;
-            
-            double partnerTime = Double.parseDouble(partnerData.split(" ")[0]);
-            int partnerCapacity = Integer.parseInt(partnerData.split(" ")[1]);
-            
-            // Онределяем, кто более загружен
-            boolean iAmMoreLoaded = totalTime > partnerTime;
-            
-            if (iAmMoreLoaded && !myTasks.isEmpty()) {
-                // Я более загружен, нужно передать задачу
-                Map.Entry<AID, Integer> taskToGive = findBestTaskToGive(avgTime, partnerTime, partnerCapacity);
-                
-                if (taskToGive != null) {
-                    // Предаю задачу
-                    ACLMessage exchange = new ACLMessage(ACLMessage.INFORM);
-                    exchange.setOntology("Task-exchange");
-                    exchange.setContent(taskToGive.getKey().getName() + " " + taskToGive.getValue());
-                    exchange.addReceiver(currentPartner);
-                    send(exchange);
-                    
-                    // Удаляю задачу из своего списка
-                    myTasks.remove(taskToGive);
-                    totalTime -= (double) taskToGive.getValue() / capacity;
-                    
-                    // Отправляю Remove TaskAgent
-                    ACLMessage removeMsg = new ACLMessage(ACLMessage.INFORM);
-                    removeMsg.setOntology("Remove");
-                    removeMsg.addReceiver(taskToGive.getKey());
-                    send(removeMsg);
-                    
-                    System.out.println("[" + computerName + "] Sent task " + taskToGive.getKey().getLocalName() + 
-                                     " to " + currentPartner.getLocalName());
-                } else {
-                    System.out.println("[" + computerName + "] No suitable task to exchange.");
-                }
-            } else {
-                System.out.println("[" + computerName + "] Partner more loaded or I have no tasks. Waiting.");
+        // Одна доля push-sum остается, по одной уходит каждому соседу вместе с текущей загрузкой
+        if (!neighbours.isEmpty()) {
+            double[] share = pushSum.split(neighbours.size() + 1);
+            ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+            msg.setOntology("Gossip");
+            MessageCodec.putDoubles(msg, new double[]{share[0], share[1], totalTime, capacity});
+            for (AID neighbour : neighbours) msg.addReceiver(neighbour);
+            transmit(msg);
+        }
+
+        // Остановка: оценка среднего устоялась и несколько раундов задачи не двигались
+        double estimate = pushSum.estimate();
+        boolean stable = !Double.isNaN(lastEstimate) && Math.abs(estimate - lastEstimate) < delta / 10;
+        lastEstimate = estimate;
+        quietRounds = stable && !movedThisRound ? quietRounds + 1 : 0;
+        movedThisRound = false;
+        if (quietRounds >= Settings.getInt("gossipQuietRounds", 5)) {
+            gossipTicker.stop();
+            gossipTicker = null;
+            passive();
+            System.out.println("[" + computerName + "] Gossip balancing settled. Avg~" + String.format("%.2f", estimate) +
+                             ", My time=" + String.format("%.2f", totalTime) +
+                             ", Deviation=" + String.format("%.2f", Math.abs(totalTime - estimate)));
+            if (balancingStartedAt != 0) {
+                MetricsRegistry.get().converged((System.nanoTime() - balancingStartedAt) / 1_000_000);
+                balancingStartedAt = 0;
             }
         }
+    }
 
-        private Map.Entry<AID, Integer> findBestTaskToGive(double avgTime, double partnerTime, int partnerCapacity) {
-            Map.Entry<AID, Integer> bestTask = null;
-            double bestImprovement = 0;
-            
-            for (Map.Entry<AID, Integer> task : myTasks) {
-                double myNewTime = totalTime - (double) task.getValue() / capacity;
-                double partnerNewTime = partnerTime + (double) task.getValue() / partnerCapacity;
-                
-                double currentMaxDev = Math.max(Math.abs(totalTime - avgTime), Math.abs(partnerTime - avgTime));
-                double newMaxDev = Math.max(Math.abs(myNewTime - avgTime), Math.abs(partnerNewTime - avgTime));
-                double improvement = currentMaxDev - newMaxDev;
-                
-                if (improvement > bestImprovement) {
-                    bestImprovement = improvement;
-                    bestTask = task;
-                }
+    private void onGossip(ACLMessage msg) {
+        double[] values = MessageCodec.getDoubles(msg);
+        pushSum.merge(values[0], values[1]);
+        ComputerInfo info = new ComputerInfo(values[2], (int) values[3]);
+        neighbourLoad.put(msg.getSender(), info);
+        // Остановившийся компьютер возвращается, если может разгрузиться на этого соседа
+        if (gossipTicker == null && balancingInitiated) {
+            pushSum.observe(totalTime);
+            double avgTime = pushSum.estimate();
+            if (totalTime > info.totalTime() + transferCost(msg.getSender()) + delta && totalTime > avgTime)
+                startGossip();
+        }
+    }
+
+    private ACLMessage completed(ExecutionEngine.Job job, long nanos) {
+        // Сообщение самому себе: состояние агента меняется только в его собственном потоке
+        ACLMessage done = new ACLMessage(ACLMessage.INFORM);
+        done.setOntology("Completed");
+        MessageCodec.putCompletion(done, new TaskCompletion(job.task().getName(), nanos));
+        done.addReceiver(getAID());
+        done.setSender(getAID());
+        return done;
+    }
+
+    private void onCompleted(ACLMessage done) {
+        if (!getAID().equals(done.getSender())) return;
+        TaskCompletion completion = MessageCodec.getCompletion(done);
+        // Выполненная задача больше не нагружает компьютер: загрузку в каталоге, у брокера и у соседей
+        // считаем только по оставшимся задачам
+        AID task = new AID(completion.task(), AID.ISGUID);
+        int complexity = myTasks.remove(task);
+        if (complexity >= 0) {
+            totalTime -= (double) complexity / capacity;
+            doneTime += (double) complexity / capacity;
+            doneTasks.add(task, complexity);
+            taskOwners.remove(task);
+            checkpointRemoved(task);
+            reportLoad();
+        }
+        executedTasks++;
+        MetricsRegistry.get().executed(completion.nanos() / 1000);
+        if (engine.isIdle()) steal();
+    }
+
+    private void steal() {
+        if (stealing || !engine.isIdle()) return;
+        List<AID> victims = new ArrayList<>();
+        try {
+            for (AID computer : DirectoryCache.of(this).search(this, "task-executing"))
+                if (!computer.equals(getAID())) victims.add(computer);
+        } catch (FIPAException fe) {
+            fe.printStackTrace();
+        }
+        // Случайная жертва: без общего состояния и без очереди к самому загруженному
+        if (victims.isEmpty() || refusals >= 2 * victims.size()) {
+            if (!victims.isEmpty() && !idleReported) {
+                idleReported = true;
+                System.out.println("[" + computerName + "] Idle. Executed " + executedTasks + " task(s)");
             }
-            
-            return bestTask;
-        }
-
-        private void handleTaskExchange(ACLMessage exchange) {
-            String[] parts = exchange.getContent().split(" ");
-            String taskName = parts[0];
-            int complexity = Integer.parseInt(parts[1]);
-            
-            // Находим задачу
-            AID taskAID = null;
-            for (AID aid : tasks.keySet()) {
-                if (aid.getName().contains(taskName)) {
-                    taskAID = aid;
-                    break;
-                }
+            return;
+        }
+        ACLMessage request = new ACLMessage(ACLMessage.REQUEST);
+        request.setOntology("Steal");
+        request.addReceiver(victims.get(random.nextInt(victims.size())));
+        transmit(request);
+        stealing = true;
+    }
+
+    private void onStealRequest(ACLMessage request) {
+        // Отдаем только задачи, которые еще ждут в очереди
+        List<Map.Entry<AID, Integer>> stolen = new ArrayList<>();
+        if (engine != null)
+            for (ExecutionEngine.Job job : engine.steal(maxTransferTasks)) {
+                myTasks.remove(job.task());
+                stolen.add(Map.entry(job.task(), job.complexity()));
             }
-            
-            if (taskAID != null) {
-                System.out.println("[" + computerName + "] Received task " + taskName + 
-                                 " from " + exchange.getSender().getLocalName());
-                // Принимаю задачу
-                myTasks.add(Map.entry(taskAID, complexity));
-                totalTime += (double) complexity / capacity;
-                tasks.put(taskAID, true);
+        if (stolen.isEmpty()) {
+            ACLMessage refuse = request.createReply();
+            refuse.setPerformative(ACLMessage.REFUSE);
+            transmit(refuse);
+            return;
+        }
+        MetricsRegistry.get().stolen(stolen.size());
+        sendTasks(request.getSender(), stolen, "steal");
+        reportLoad();
+        System.out.println("[" + computerName + "] " + request.getSender().getLocalName() + " stole " +
+                         stolen.size() + " task(s)");
+    }
+
+    private void onStealRefused(ACLMessage refuse) {
+        // Пауза перед следующей попыткой тоже считается кражей: вторую параллельно не начинаем
+        refusals++;
+        addBehaviour(new WakerBehaviour(this, stealBackoff) {
+            protected void onWake() {
+                stealing = false;
+                steal();
+                passive();
             }
-            
-            // Отправляю оповещение о завершении
-            ACLMessage complete = new ACLMessage(ACLMessage.INFORM);
-            complete.setOntology("Exchange-complete");
-            complete.addReceiver(exchange.getSender());
-            send(complete);
+        });
+    }
+
+    // Собственная работа, о которой не сообщит ни одно входящее сообщение
+    protected boolean isBusy() {
+        return !directoryKnown || initiating || gossipTicker != null || stealing || (engine != null && !engine.isIdle());
+    }
+
+    private void handleTaskExchange(ACLMessage exchange) {
+        List<TaskTransfer> transfers = MessageCodec.getTransfers(exchange);
+
+        for (TaskTransfer transfer : transfers) {
+            AID taskAID = new AID(transfer.name(), AID.ISGUID);
+            AID owner = transfer.owner().isEmpty() ? taskAID : new AID(transfer.owner(), AID.ISGUID);
+
+            // Принимаю задачу
+            addTask(taskAID, transfer.complexity(), owner);
+            if (owner.equals(taskAID)) tasks.put(taskAID, true);
+        }
+        if (!transfers.isEmpty()) {
+            reportLoad();
+            System.out.println("[" + computerName + "] " + exchange.getConversationId() + ": received " +
+                             transfers.size() + " task(s) from " + exchange.getSender().getLocalName());
         }
     }
 }
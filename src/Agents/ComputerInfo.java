@@ -0,0 +1,7 @@
+package Agents;
+
+/**
+ * Load report of a computer as carried by "Computer-info" messages.
+ */
+public record ComputerInfo(double totalTime, int capacity) {
+}
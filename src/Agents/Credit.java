@@ -0,0 +1,85 @@
+package Agents;
+
+import java.math.BigInteger;
+
+/**
+ * Termination credit: an exact dyadic fraction numerator / 2^exponent. Shares are made by
+ * raising the exponent, so splitting and summing never lose anything to rounding and the
+ * controller can tell exactly when all credit is back.
+ */
+public final class Credit {
+    public static final Credit ZERO = new Credit(BigInteger.ZERO, 0);
+    public static final Credit ONE = new Credit(BigInteger.ONE, 0);
+
+    private final BigInteger numerator;
+    private final int exponent;
+
+    private Credit(BigInteger numerator, int exponent) {
+        // Kept reduced, so equal values have equal fields
+        int shift = numerator.signum() == 0 ? exponent : Math.min(numerator.getLowestSetBit(), exponent);
+        this.numerator = numerator.shiftRight(shift);
+        this.exponent = exponent - shift;
+    }
+
+    public static Credit of(long whole) {
+        return new Credit(BigInteger.valueOf(whole), 0);
+    }
+
+    public static Credit of(BigInteger numerator, int exponent) {
+        if (exponent < 0) throw new IllegalArgumentException("Negative credit exponent " + exponent);
+        return new Credit(numerator, exponent);
+    }
+
+    public BigInteger numerator() {
+        return numerator;
+    }
+
+    public int exponent() {
+        return exponent;
+    }
+
+    public Credit add(Credit other) {
+        int e = Math.max(exponent, other.exponent);
+        return new Credit(numerator.shiftLeft(e - exponent).add(other.numerator.shiftLeft(e - other.exponent)), e);
+    }
+
+    public Credit subtract(Credit other) {
+        return add(new Credit(other.numerator.negate(), other.exponent));
+    }
+
+    public Credit times(int count) {
+        return new Credit(numerator.multiply(BigInteger.valueOf(count)), exponent);
+    }
+
+    /**
+     * What each of count receivers gets: this / 2^m with 2^m > count, so a part always stays behind.
+     */
+    public Credit share(int count) {
+        return new Credit(numerator, exponent + 32 - Integer.numberOfLeadingZeros(count));
+    }
+
+    public boolean isZero() {
+        return numerator.signum() == 0;
+    }
+
+    /**
+     * Reads the form written by toString; throws IllegalArgumentException on anything else.
+     */
+    public static Credit parse(String value) {
+        int colon = value.indexOf(':');
+        if (colon < 0) throw new IllegalArgumentException("Malformed credit " + value);
+        return of(new BigInteger(value.substring(0, colon)), Integer.parseInt(value.substring(colon + 1)));
+    }
+
+    public String toString() {
+        return numerator + ":" + exponent;
+    }
+
+    public boolean equals(Object o) {
+        return o instanceof Credit other && numerator.equals(other.numerator) && exponent == other.exponent;
+    }
+
+    public int hashCode() {
+        return 31 * numerator.hashCode() + exponent;
+    }
+}
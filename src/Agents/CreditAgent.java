@@ -0,0 +1,110 @@
+package Agents;
+
+import Metrics.MeteredAgent;
+import jade.core.AID;
+import jade.core.behaviours.OneShotBehaviour;
+import jade.lang.acl.ACLMessage;
+
+import java.util.Iterator;
+
+/**
+ * Agent that takes part in termination detection by credit recovery. Every agent starts
+ * with a credit of 1, and whoever starts it tells the TerminationAgent so. A message sent
+ * through transmit carries part of the sender's credit, which the receiver takes over on
+ * delivery; an agent with an empty mailbox and nothing of its own going on (see isBusy)
+ * hands everything it holds back to the TerminationAgent. Once all credit is back, no
+ * agent is active and no message that could make one active is in flight.
+ *
+ * Messages without credit (DF notifications, anything sent after the credit went back)
+ * must only inform: an agent may not start new work because of them.
+ */
+public abstract class CreditAgent extends MeteredAgent {
+    public static final String TERMINATION = "Termination";
+    private static final String CREDIT = "credit";
+    private static final boolean ENABLED = Settings.getBoolean("terminationDetection", false);
+
+    private Credit credit = Credit.ONE;
+    private boolean returnScheduled = false;
+
+    protected void transmit(ACLMessage msg) {
+        if (ENABLED) {
+            int receivers = 0;
+            for (Iterator<?> it = msg.getAllReceiver(); it.hasNext(); it.next()) receivers++;
+            // A message sent again must not carry the credit of its first sending
+            msg.removeUserDefinedParameter(CREDIT);
+            synchronized (mailboxLock()) {
+                if (!credit.isZero() && receivers > 0) {
+                    Credit share = credit.share(receivers);
+                    credit = credit.subtract(share.times(receivers));
+                    msg.addUserDefinedParameter(CREDIT, share.toString());
+                }
+            }
+        }
+        super.transmit(msg);
+    }
+
+    protected void delivered(ACLMessage msg) {
+        String share = msg.getUserDefinedParameter(CREDIT);
+        if (share == null) return;
+        Credit received;
+        try {
+            received = Credit.parse(share);
+        } catch (IllegalArgumentException e) {
+            // Runs on the sender's thread: a malformed share is dropped, not thrown at the sender
+            System.err.println("Dropped malformed credit from " + msg.getSender() + ": " + share);
+            return;
+        }
+        synchronized (mailboxLock()) {
+            credit = credit.add(received);
+        }
+    }
+
+    /**
+     * Whether the agent may start work on its own, e.g. on a DF notification: only while it
+     * still holds credit, so that everything the work sends carries some.
+     */
+    protected boolean holdsCredit() {
+        if (!ENABLED) return true;
+        synchronized (mailboxLock()) {
+            return !credit.isZero();
+        }
+    }
+
+    /**
+     * Work the agent does without being asked by a message: a pending deadline, a ticker,
+     * tasks being executed. Whoever ends that work must call passive afterwards.
+     */
+    protected boolean isBusy() {
+        return false;
+    }
+
+    /**
+     * Called when the agent has run out of messages. The credit goes back after the
+     * behaviours already scheduled have had their turn, if the agent is still idle then.
+     */
+    protected void passive() {
+        if (!ENABLED || returnScheduled) return;
+        returnScheduled = true;
+        addBehaviour(new OneShotBehaviour(this) {
+            public void action() {
+                returnScheduled = false;
+                returnCredit();
+            }
+        });
+    }
+
+    private void returnCredit() {
+        Credit returned;
+        // Under the mailbox lock a message cannot slip in between the check and handing the credit back
+        synchronized (mailboxLock()) {
+            if (credit.isZero() || getCurQueueSize() > 0 || isBusy()) return;
+            returned = credit;
+            credit = Credit.ZERO;
+        }
+        ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+        msg.setOntology("Credit");
+        MessageCodec.putCredit(msg, returned);
+        msg.addReceiver(new AID(TERMINATION, AID.ISLOCALNAME));
+        super.transmit(msg);
+    }
+}
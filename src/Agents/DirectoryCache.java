@@ -0,0 +1,132 @@
+package Agents;
+
+import Metrics.MetricsRegistry;
+import jade.core.AID;
+import jade.core.Agent;
+import jade.domain.DFService;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.domain.FIPAException;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Yellow-pages membership shared by the agents of one container. A search result is
+ * leased for "directoryLease" ms; while the lease holds, agents read it locally, and when
+ * it runs out the first agent to ask queries the DF while the others wait for its answer.
+ * Registrations made through this class and DF subscription events update the cache at
+ * once; other changes are seen when the lease runs out. Computers subscribe to each other,
+ * so a container with a computer sees computers join and leave anywhere right away. The
+ * localities that members advertise come along with every search and registration.
+ */
+public final class DirectoryCache {
+    private static final Map<String, DirectoryCache> CONTAINERS = new ConcurrentHashMap<>();
+
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+    private final Map<AID, Locality> localities = new ConcurrentHashMap<>();
+    private final long leaseMillis = Settings.getLong("directoryLease", 2000);
+
+    private static final class Lease {
+        AID[] members = new AID[0];
+        long expiresAt = 0;
+    }
+
+    private DirectoryCache() {
+    }
+
+    /**
+     * Cache of the container the agent currently lives in. Container names repeat across
+     * platforms, so the key includes the platform: a JVM may host several in turn.
+     */
+    public static DirectoryCache of(Agent agent) {
+        return CONTAINERS.computeIfAbsent(agent.getHap() + "/" + agent.here().getName(), k -> new DirectoryCache());
+    }
+
+    /**
+     * Agents offering the service type, as of the current lease.
+     */
+    public AID[] search(Agent agent, String type) throws FIPAException {
+        Lease lease = leases.computeIfAbsent(type, k -> new Lease());
+        synchronized (lease) {
+            if (System.currentTimeMillis() >= lease.expiresAt) {
+                DFAgentDescription[] result = DFService.search(agent, template(type));
+                AID[] members = new AID[result.length];
+                for (int i = 0; i < result.length; i++) {
+                    members[i] = result[i].getName();
+                    located(result[i]);
+                }
+                lease.members = members;
+                lease.expiresAt = System.currentTimeMillis() + leaseMillis;
+                MetricsRegistry.get().directoryQuery();
+            }
+            else MetricsRegistry.get().directoryHit();
+            return lease.members.clone();
+        }
+    }
+
+    /**
+     * DF registration that also shows up in the cache of this container right away.
+     */
+    public static void register(Agent agent, DFAgentDescription dfd) throws FIPAException {
+        DFService.register(agent, dfd);
+        DirectoryCache cache = of(agent);
+        for (Iterator<?> it = dfd.getAllServices(); it.hasNext(); )
+            cache.registered(((ServiceDescription) it.next()).getType(), dfd);
+    }
+
+    public static void deregister(Agent agent) throws FIPAException {
+        DFService.deregister(agent);
+        of(agent).deregistered(agent.getAID());
+    }
+
+    /**
+     * Applies a registration seen by this container, e.g. through a DF subscription.
+     */
+    public void registered(String type, DFAgentDescription dfd) {
+        located(dfd);
+        AID member = dfd.getName();
+        Lease lease = leases.get(type);
+        if (lease == null) return;
+        synchronized (lease) {
+            if (Arrays.asList(lease.members).contains(member)) return;
+            AID[] members = Arrays.copyOf(lease.members, lease.members.length + 1);
+            members[members.length - 1] = member;
+            lease.members = members;
+        }
+    }
+
+    /**
+     * Applies a deregistration, for every service type the agent may have offered.
+     */
+    public void deregistered(AID member) {
+        localities.remove(member);
+        for (Lease lease : leases.values()) {
+            synchronized (lease) {
+                lease.members = Arrays.stream(lease.members).filter(m -> !m.equals(member)).toArray(AID[]::new);
+            }
+        }
+    }
+
+    /**
+     * Locality the member advertised, or null if it has none or has not been seen in a search yet.
+     */
+    public Locality locality(AID member) {
+        return localities.get(member);
+    }
+
+    private void located(DFAgentDescription dfd) {
+        Locality locality = Locality.of(dfd);
+        if (locality != null) localities.put(dfd.getName(), locality);
+    }
+
+    static DFAgentDescription template(String type) {
+        DFAgentDescription template = new DFAgentDescription();
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType(type);
+        template.addServices(sd);
+        return template;
+    }
+}
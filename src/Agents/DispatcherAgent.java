@@ -0,0 +1,114 @@
+package Agents;
+
+import jade.core.AID;
+import jade.lang.acl.ACLMessage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Owner of one batch of tasks, placed in a single round: every computer answers with a
+ * vectorized proposal and the batch is assigned greedily in batch order.
+ */
+public class DispatcherAgent extends BatchOwnerAgent<double[]> {
+    // Define variables
+    private List<String> taskNames = new ArrayList<>();
+    private int[] complexities = new int[0];
+    private Map<String, AID> placement = new HashMap<>();
+
+    public DispatcherAgent() {
+        super("Batch", "JADE-Dispatcher");
+    }
+
+    protected void setup() {
+        // Filling variables: arguments are pairs of task name and complexity
+        Object[] args = getArguments();
+        if (args != null) {
+            complexities = new int[args.length / 2];
+            for (int i = 0; i < complexities.length; i++) {
+                taskNames.add((String) args[2 * i]);
+                complexities[i] = Integer.parseInt((String) args[2 * i + 1]);
+            }
+        }
+
+        super.setup();
+        startRound();
+
+        System.out.println("DispatcherAgent " + getAID().getName() + " is ready. Batch size=" + taskNames.size());
+    }
+
+    protected void takeDown() {
+        super.takeDown();
+        System.out.println("DispatcherAgent " + getAID().getName() + " is terminated.");
+    }
+
+    protected int[] roundComplexities() {
+        return complexities;
+    }
+
+    protected String taskName(int i) {
+        return taskNames.get(i);
+    }
+
+    protected void prepare(ACLMessage cfp, int[] complexities) {
+        // Send the whole batch to computers in one CFP
+        MessageCodec.putInts(cfp, complexities);
+    }
+
+    protected double[] proposal(ACLMessage reply) {
+        // Vectorized proposal: current total time followed by one finish time per task
+        return MessageCodec.getDoubles(reply);
+    }
+
+    protected int[] assign(List<AID> computers, List<double[]> proposals, int[] complexities) {
+        return assignGreedy(proposals, complexities.length, Locality.costs(this, computers));
+    }
+
+    protected void placed(int i, AID computer) {
+        placement.put(taskNames.get(i), computer);
+    }
+
+    protected void roundAssigned(int tasks, int computers) {
+        System.out.println("DispatcherAgent " + getAID().getName() + " placed " + tasks +
+                " tasks on " + computers + " computers.");
+    }
+
+    protected void moved(String task, AID computer) {
+        placement.put(task, computer);
+    }
+
+    protected boolean allPlaced() {
+        return placement.size() == taskNames.size();
+    }
+
+    /**
+     * Computer index for every task of a batch, given one vectorized proposal per computer
+     * (current total time followed by one finish time per task) and the cost of reaching
+     * each computer, which counts against it without adding to its load.
+     */
+    static int[] assignGreedy(List<double[]> proposals, int tasks, double[] costs) {
+        double[] loads = new double[proposals.size()];
+        for (int c = 0; c < loads.length; c++) loads[c] = proposals.get(c)[0];
+
+        // Greedy in batch order, taking into account tasks already placed within this batch
+        int[] assignment = new int[tasks];
+        for (int i = 0; i < tasks; i++) {
+            int best = -1;
+            double bestTime = Double.MAX_VALUE;
+            for (int c = 0; c < loads.length; c++) {
+                double[] times = proposals.get(c);
+                double time = loads[c] + times[i + 1] - times[0] + costs[c];
+                if (time < bestTime) {
+                    bestTime = time;
+                    best = c;
+                }
+            }
+            double[] times = proposals.get(best);
+            loads[best] += times[i + 1] - times[0];
+            assignment[i] = best;
+        }
+        return assignment;
+    }
+}
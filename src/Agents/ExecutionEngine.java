@@ -0,0 +1,120 @@
+package Agents;
+
+import jade.core.AID;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Runs the tasks of one computer on a fixed pool of worker threads. A computer of
+ * capacity C with W workers gives each worker C / W operations per second, so a task of
+ * complexity K takes K * W / C seconds (times the time scale) on one worker. Tasks wait
+ * in a queue until a worker is free; tasks not yet started can be taken back by steal.
+ */
+public final class ExecutionEngine {
+    public record Job(AID task, int complexity) {
+    }
+
+    private final Deque<Job> queue = new ArrayDeque<>();
+    private final Thread[] workers;
+    private final Workload workload;
+    private final double nanosPerOp;
+    private final BiConsumer<Job, Long> onDone;
+    private int running = 0;
+    private boolean stopped = false;
+
+    /**
+     * onDone is called on the worker thread with the job and its real duration in nanoseconds.
+     */
+    public ExecutionEngine(String name, int capacity, int workerCount, double timeScale, Workload workload,
+                           BiConsumer<Job, Long> onDone) {
+        this.workload = workload;
+        this.onDone = onDone;
+        this.nanosPerOp = 1e9 * workerCount / capacity * timeScale;
+        workers = new Thread[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Thread(this::work, name + "-worker-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Workers for a computer of the given capacity: one per capacityPerWorker operations per second.
+     */
+    public static int workersFor(int capacity, int capacityPerWorker) {
+        return Math.max(1, Math.round((float) capacity / Math.max(1, capacityPerWorker)));
+    }
+
+    public synchronized void submit(AID task, int complexity) {
+        queue.addLast(new Job(task, complexity));
+        notify();
+    }
+
+    /**
+     * Takes up to half of the waiting tasks, newest first, but no more than max.
+     */
+    public synchronized List<Job> steal(int max) {
+        List<Job> stolen = new ArrayList<>();
+        int count = Math.min(max, (queue.size() + 1) / 2);
+        for (int i = 0; i < count; i++) stolen.add(queue.pollLast());
+        return stolen;
+    }
+
+    public synchronized boolean isIdle() {
+        return queue.isEmpty() && running == 0;
+    }
+
+    public synchronized int queued() {
+        return queue.size();
+    }
+
+    public synchronized int running() {
+        return running;
+    }
+
+    public void shutdown() {
+        synchronized (this) {
+            stopped = true;
+            queue.clear();
+            notifyAll();
+        }
+        for (Thread worker : workers) worker.interrupt();
+    }
+
+    private void work() {
+        while (true) {
+            Job job;
+            synchronized (this) {
+                while (queue.isEmpty() && !stopped) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        if (stopped) return;
+                    }
+                }
+                if (stopped) return;
+                job = queue.pollFirst();
+                running++;
+            }
+
+            long start = System.nanoTime();
+            try {
+                workload.run(job.task(), job.complexity(), (long) (job.complexity() * nanosPerOp));
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+            long elapsed = System.nanoTime() - start;
+
+            synchronized (this) {
+                running--;
+            }
+            onDone.accept(job, elapsed);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package Agents;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Computers ordered by load, kept in a size-augmented treap. Updates, rank and
+ * selection queries and range counts are O(log M); sum and deviation are maintained
+ * incrementally, so nothing is rebuilt when a single Computer-info arrives.
+ */
+public class LoadIndex<K> {
+    private static final class Node<K> {
+        final K computer;
+        final double load;
+        final int priority;
+        Node<K> left, right;
+        int size = 1;
+
+        Node(K computer, double load, int priority) {
+            this.computer = computer;
+            this.load = load;
+            this.priority = priority;
+        }
+    }
+
+    private final Map<K, Node<K>> nodes = new HashMap<>();
+    private final Comparator<? super K> tieBreak;
+    private final Random random = new Random();
+    private Node<K> root;
+    private double sum = 0;
+    private double sumSquares = 0;
+
+    /**
+     * @param tieBreak order of computers with equal load, so that every computer sees the same ranking
+     */
+    public LoadIndex(Comparator<? super K> tieBreak) {
+        this.tieBreak = tieBreak;
+    }
+
+    public void update(K computer, double load) {
+        Node<K> old = nodes.get(computer);
+        if (old != null) {
+            if (old.load == load) return;
+            root = erase(root, old);
+            sum -= old.load;
+            sumSquares -= old.load * old.load;
+        }
+        Node<K> node = new Node<>(computer, load, random.nextInt());
+        root = insert(root, node);
+        nodes.put(computer, node);
+        sum += load;
+        sumSquares += load * load;
+    }
+
+    public void remove(K computer) {
+        Node<K> old = nodes.remove(computer);
+        if (old == null) return;
+        root = erase(root, old);
+        sum -= old.load;
+        sumSquares -= old.load * old.load;
+    }
+
+    public boolean contains(K computer) {
+        return nodes.containsKey(computer);
+    }
+
+    public double load(K computer) {
+        Node<K> node = nodes.get(computer);
+        return node == null ? Double.NaN : node.load;
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    public double sum() {
+        return sum;
+    }
+
+    public double average() {
+        return nodes.isEmpty() ? 0.0 : sum / nodes.size();
+    }
+
+    public double deviation() {
+        if (nodes.isEmpty()) return 0.0;
+        double avg = average();
+        return Math.sqrt(Math.max(0.0, sumSquares / nodes.size() - avg * avg));
+    }
+
+    public double min() {
+        return nodes.isEmpty() ? Double.NaN : nodes.get(select(0)).load;
+    }
+
+    public double max() {
+        return nodes.isEmpty() ? Double.NaN : nodes.get(select(nodes.size() - 1)).load;
+    }
+
+    /**
+     * Position of the computer in ascending load order, or -1 if it has not reported yet.
+     */
+    public int rank(K computer) {
+        Node<K> target = nodes.get(computer);
+        if (target == null) return -1;
+        int rank = 0;
+        Node<K> t = root;
+        while (t != null) {
+            int cmp = compare(target, t);
+            if (cmp == 0) return rank + size(t.left);
+            if (cmp < 0) t = t.left;
+            else {
+                rank += size(t.left) + 1;
+                t = t.right;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Computer at the given position in ascending load order.
+     */
+    public K select(int rank) {
+        if (rank < 0 || rank >= size()) return null;
+        Node<K> t = root;
+        while (t != null) {
+            int leftSize = size(t.left);
+            if (rank < leftSize) t = t.left;
+            else if (rank == leftSize) return t.computer;
+            else {
+                rank -= leftSize + 1;
+                t = t.right;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Number of computers whose load lies in [low, high].
+     */
+    public int countWithin(double low, double high) {
+        return countBelow(high, true) - countBelow(low, false);
+    }
+
+    private int countBelow(double bound, boolean inclusive) {
+        int count = 0;
+        Node<K> t = root;
+        while (t != null) {
+            if (t.load < bound || (inclusive && t.load == bound)) {
+                count += size(t.left) + 1;
+                t = t.right;
+            } else t = t.left;
+        }
+        return count;
+    }
+
+    private int compare(Node<K> a, Node<K> b) {
+        int cmp = Double.compare(a.load, b.load);
+        return cmp != 0 ? cmp : tieBreak.compare(a.computer, b.computer);
+    }
+
+    private static int size(Node<?> t) {
+        return t == null ? 0 : t.size;
+    }
+
+    private static void recount(Node<?> t) {
+        t.size = 1 + size(t.left) + size(t.right);
+    }
+
+    private Node<K> insert(Node<K> t, Node<K> node) {
+        if (t == null) return node;
+        if (node.priority > t.priority) {
+            Split<K> parts = split(t, node);
+            node.left = parts.before();
+            node.right = parts.rest();
+            recount(node);
+            return node;
+        }
+        if (compare(node, t) < 0) t.left = insert(t.left, node);
+        else t.right = insert(t.right, node);
+        recount(t);
+        return t;
+    }
+
+    private Node<K> erase(Node<K> t, Node<K> node) {
+        if (t == null) return null;
+        if (t == node) return merge(t.left, t.right);
+        if (compare(node, t) < 0) t.left = erase(t.left, node);
+        else t.right = erase(t.right, node);
+        recount(t);
+        return t;
+    }
+
+    private record Split<K>(Node<K> before, Node<K> rest) {
+    }
+
+    // Splits the tree into nodes ordered before the key and the rest
+    private Split<K> split(Node<K> t, Node<K> key) {
+        if (t == null) return new Split<>(null, null);
+        if (compare(t, key) < 0) {
+            Split<K> parts = split(t.right, key);
+            t.right = parts.before();
+            recount(t);
+            return new Split<>(t, parts.rest());
+        }
+        Split<K> parts = split(t.left, key);
+        t.left = parts.rest();
+        recount(t);
+        return new Split<>(parts.before(), t);
+    }
+
+    private Node<K> merge(Node<K> a, Node<K> b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            recount(a);
+            return a;
+        }
+        b.left = merge(a, b.left);
+        recount(b);
+        return b;
+    }
+}
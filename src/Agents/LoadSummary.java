@@ -0,0 +1,15 @@
+package Agents;
+
+/**
+ * What a broker tells its peers: how many tasks it has placed and, for every capacity
+ * among its computers, the smallest total time. That is enough to estimate the best
+ * finish time a peer can offer for a task of any complexity.
+ */
+public record LoadSummary(int placed, int[] capacities, double[] minTimes) {
+    public double bestTime(int complexity) {
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < capacities.length; i++)
+            best = Math.min(best, minTimes[i] + (double) complexity / capacities[i]);
+        return best;
+    }
+}
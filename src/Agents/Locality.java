@@ -0,0 +1,80 @@
+package Agents;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.Location;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.Property;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Where an agent runs: its host and its container. Computers advertise theirs as properties
+ * of the "task-executing" service. With "locality" on, whoever places or moves tasks adds the
+ * cost of reaching a computer to that computer's time, so tasks stay in their container, or
+ * at least on their host, while the load allows. Costs are in units of total time:
+ * localityHostCost for another container on the same host, localityRemoteCost for another host.
+ */
+public record Locality(String host, String container) {
+    public static final boolean ENABLED = Settings.getBoolean("locality", false);
+    private static final double HOST_COST = Settings.getDouble("localityHostCost", 0.5);
+    private static final double REMOTE_COST = Settings.getDouble("localityRemoteCost", 2.0);
+
+    public static Locality of(Agent agent) {
+        Location here = agent.here();
+        return new Locality(String.valueOf(here.getAddress()), here.getName());
+    }
+
+    /**
+     * Locality advertised in a DF description, or null if it has none.
+     */
+    public static Locality of(DFAgentDescription dfd) {
+        String host = null, container = null;
+        for (Iterator<?> services = dfd.getAllServices(); services.hasNext(); ) {
+            for (Iterator<?> it = ((ServiceDescription) services.next()).getAllProperties(); it.hasNext(); ) {
+                Property property = (Property) it.next();
+                if ("host".equals(property.getName())) host = String.valueOf(property.getValue());
+                else if ("container".equals(property.getName())) container = String.valueOf(property.getValue());
+            }
+        }
+        return host == null || container == null ? null : new Locality(host, container);
+    }
+
+    public void advertise(ServiceDescription sd) {
+        sd.addProperties(new Property("host", host));
+        sd.addProperties(new Property("container", container));
+    }
+
+    public boolean sameContainer(Locality other) {
+        return other != null && host.equals(other.host) && container.equals(other.container);
+    }
+
+    /**
+     * Cost of reaching other from here, nothing when locality is off. Unknown places count as another host.
+     */
+    public double cost(Locality other) {
+        if (!ENABLED) return 0;
+        if (other == null || !host.equals(other.host)) return REMOTE_COST;
+        return container.equals(other.container) ? 0 : HOST_COST;
+    }
+
+    /**
+     * Whether the computer runs in the agent's own container, as far as the directory knows.
+     */
+    public static boolean isLocal(Agent agent, AID computer) {
+        return of(agent).sameContainer(DirectoryCache.of(agent).locality(computer));
+    }
+
+    /**
+     * Cost of reaching each of the computers from the agent's container.
+     */
+    public static double[] costs(Agent agent, List<AID> computers) {
+        Locality here = of(agent);
+        DirectoryCache directory = DirectoryCache.of(agent);
+        double[] costs = new double[computers.size()];
+        for (int c = 0; c < costs.length; c++) costs[c] = here.cost(directory.locality(computers.get(c)));
+        return costs;
+    }
+}
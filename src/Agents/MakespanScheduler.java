@@ -0,0 +1,109 @@
+package Agents;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Offline assignment of a batch of tasks to computers of different capacities, minimizing
+ * the makespan. LPT for uniform machines places the largest tasks first on the computer that
+ * would finish them earliest; a local search then moves single tasks off the computer that
+ * finishes last while that lowers the makespan.
+ */
+public final class MakespanScheduler {
+    private MakespanScheduler() {
+    }
+
+    /**
+     * Computer index for every task. initialTimes are the current total times of the computers.
+     */
+    public static int[] schedule(int[] complexities, int[] capacities, double[] initialTimes, int maxMoves) {
+        int m = capacities.length;
+        double[] times = Arrays.copyOf(initialTimes, m);
+        int[] assignment = new int[complexities.length];
+        if (m == 0) {
+            Arrays.fill(assignment, -1);
+            return assignment;
+        }
+
+        // LPT: computers of one capacity are interchangeable, so only the earliest of each class is a candidate
+        Map<Integer, PriorityQueue<Integer>> classes = new HashMap<>();
+        for (int c = 0; c < m; c++)
+            classes.computeIfAbsent(capacities[c], k -> new PriorityQueue<>(Comparator.comparingDouble((Integer i) -> times[i])
+                    .thenComparingInt(i -> i))).add(c);
+
+        Integer[] order = new Integer[complexities.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Integer.compare(complexities[b], complexities[a]));
+
+        for (int task : order) {
+            PriorityQueue<Integer> bestClass = null;
+            double bestTime = Double.MAX_VALUE;
+            for (PriorityQueue<Integer> queue : classes.values()) {
+                int c = queue.peek();
+                double time = times[c] + (double) complexities[task] / capacities[c];
+                if (time < bestTime) {
+                    bestTime = time;
+                    bestClass = queue;
+                }
+            }
+            int c = bestClass.poll();
+            times[c] = bestTime;
+            bestClass.add(c);
+            assignment[task] = c;
+        }
+
+        // Local search: move a task off the last computer to finish while the makespan drops
+        LoadIndex<Integer> byTime = new LoadIndex<>(Integer::compare);
+        Map<Integer, LoadIndex<Integer>> byClass = new HashMap<>();
+        for (int c = 0; c < m; c++) {
+            byTime.update(c, times[c]);
+            byClass.computeIfAbsent(capacities[c], k -> new LoadIndex<>(Integer::compare)).update(c, times[c]);
+        }
+        Map<Integer, TaskStore<Integer>> stores = new HashMap<>();
+        for (int task = 0; task < assignment.length; task++)
+            stores.computeIfAbsent(assignment[task], k -> new TaskStore<>()).add(task, complexities[task]);
+
+        for (int move = 0; move < maxMoves; move++) {
+            int last = byTime.select(m - 1);
+            TaskStore<Integer> lastTasks = stores.get(last);
+            if (lastTasks == null) break;
+
+            Integer bestTask = null;
+            int bestTarget = -1;
+            double bestFinish = times[last] * (1 - 1e-9);
+            for (LoadIndex<Integer> index : byClass.values()) {
+                Integer target = index.select(0);
+                if (target == last) target = index.select(1);
+                if (target == null) continue;
+                Integer task = lastTasks.bestMakespanTransfer(times[last], capacities[last], times[target], capacities[target]);
+                if (task == null) continue;
+                double finish = Math.max(times[last] - (double) complexities[task] / capacities[last],
+                        times[target] + (double) complexities[task] / capacities[target]);
+                if (finish < bestFinish) {
+                    bestFinish = finish;
+                    bestTask = task;
+                    bestTarget = target;
+                }
+            }
+            if (bestTask == null) break;
+
+            int complexity = lastTasks.remove(bestTask);
+            stores.computeIfAbsent(bestTarget, k -> new TaskStore<>()).add(bestTask, complexity);
+            assignment[bestTask] = bestTarget;
+            setTime(last, times[last] - (double) complexity / capacities[last], times, capacities, byTime, byClass);
+            setTime(bestTarget, times[bestTarget] + (double) complexity / capacities[bestTarget], times, capacities, byTime, byClass);
+        }
+
+        return assignment;
+    }
+
+    private static void setTime(int c, double time, double[] times, int[] capacities,
+                                LoadIndex<Integer> byTime, Map<Integer, LoadIndex<Integer>> byClass) {
+        times[c] = time;
+        byTime.update(c, time);
+        byClass.get(capacities[c]).update(c, time);
+    }
+}
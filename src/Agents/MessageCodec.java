@@ -0,0 +1,301 @@
+package Agents;
+
+import jade.lang.acl.ACLMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary content of inter-agent messages. Numbers travel as raw ints and doubles,
+ * so nothing is reparsed on the receiving side and no precision is lost.
+ */
+public final class MessageCodec {
+    private MessageCodec() {
+    }
+
+    public static void putInt(ACLMessage msg, int value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        msg.setByteSequenceContent(bytes.toByteArray());
+    }
+
+    public static int getInt(ACLMessage msg) {
+        try (DataInputStream in = input(msg)) {
+            return in.readInt();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed int content from " + msg.getSender(), e);
+        }
+    }
+
+    public static void putDouble(ACLMessage msg, double value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeDouble(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        msg.setByteSequenceContent(bytes.toByteArray());
+    }
+
+    public static double getDouble(ACLMessage msg) {
+        try (DataInputStream in = input(msg)) {
+            return in.readDouble();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed double content from " + msg.getSender(), e);
+        }
+    }
+
+    public static void putLong(ACLMessage msg, long value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        msg.setByteSequenceContent(bytes.toByteArray());
+    }
+
+    public static long getLong(ACLMessage msg) {
+        try (DataInputStream in = input(msg)) {
+            return in.readLong();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed long content from " + msg.getSender(), e);
+        }
+    }
+
+    public static void putBoolean(ACLMessage msg, boolean value) {
+        msg.setByteSequenceContent(new byte[]{(byte) (value ? 1 : 0)});
+    }
+
+    public static boolean getBoolean(ACLMessage msg) {
+        try (DataInputStream in = input(msg)) {
+            return in.readBoolean();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed boolean content from " + msg.getSender(), e);
+        }
+    }
+
+    // An agent name, e.g. the computer a broker has placed a task on
+    public static void putName(ACLMessage msg, String name) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(name);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        msg.setByteSequenceContent(bytes.toByteArray());
+    }
+
+    public static String getName(ACLMessage msg) {
+        try (DataInputStream in = input(msg)) {
+            return in.readUTF();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed name from " + msg.getSender(), e);
+        }
+    }
+
+    public static void putInts(ACLMessage msg, int[] values) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4 + 4 * values.length);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(values.length);
+            for (int value : values) out.writeInt(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        msg.setByteSequenceContent(bytes.toByteArray());
+    }
+
+    public static int[] getInts(ACLMessage msg) {
+        try (DataInputStream in = input(msg)) {
+            int[] values = new int[in.readInt()];
+            for (int i = 0; i < values.length; i++) values[i] = in.readInt();
+            return values;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed int vector from " + msg.getSender(), e);
+        }
+    }
+
+    public static void putDoubles(ACLMessage msg, double[] values) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4 + 8 * values.length);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(values.length);
+            for (double value : values) out.writeDouble(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        msg.setByteSequenceContent(bytes.toByteArray());
+    }
+
+    public static double[] getDoubles(ACLMessage msg) {
+        try (DataInputStream in = input(msg)) {
+            double[] values = new double[in.readInt()];
+            for (int i = 0; i < values.length; i++) values[i] = in.readDouble();
+            return values;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed double vector from " + msg.getSender(), e);
+        }
+    }
+
+    public static void putComputerInfo(ACLMessage msg, ComputerInfo info) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(12);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeDouble(info.totalTime());
+            out.writeInt(info.capacity());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        msg.setByteSequenceContent(bytes.toByteArray());
+    }
+
+    public static ComputerInfo getComputerInfo(ACLMessage msg) {
+        try (DataInputStream in = input(msg)) {
+            return new ComputerInfo(in.readDouble(), in.readInt());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed computer info from " + msg.getSender(), e);
+        }
+    }
+
+    public static void putTransfers(ACLMessage msg, List<TaskTransfer> transfers) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(transfers.size());
+            for (TaskTransfer transfer : transfers) {
+                out.writeUTF(transfer.name());
+                out.writeInt(transfer.complexity());
+                out.writeUTF(transfer.owner() == null ? "" : transfer.owner());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        msg.setByteSequenceContent(bytes.toByteArray());
+    }
+
+    public static List<TaskTransfer> getTransfers(ACLMessage msg) {
+        try (DataInputStream in = input(msg)) {
+            int size = in.readInt();
+            List<TaskTransfer> transfers = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) transfers.add(new TaskTransfer(in.readUTF(), in.readInt(), in.readUTF()));
+            return transfers;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed task transfer from " + msg.getSender(), e);
+        }
+    }
+
+    public static void putRemoval(ACLMessage msg, TaskRemoval removal) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(removal.computer());
+            out.writeInt(removal.tasks().size());
+            for (String task : removal.tasks()) out.writeUTF(task);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        msg.setByteSequenceContent(bytes.toByteArray());
+    }
+
+    public static TaskRemoval getRemoval(ACLMessage msg) {
+        try (DataInputStream in = input(msg)) {
+            String computer = in.readUTF();
+            int size = in.readInt();
+            List<String> tasks = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) tasks.add(in.readUTF());
+            return new TaskRemoval(computer, tasks);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed task removal from " + msg.getSender(), e);
+        }
+    }
+
+    public static void putCompletion(ACLMessage msg, TaskCompletion completion) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(completion.task());
+            out.writeLong(completion.nanos());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        msg.setByteSequenceContent(bytes.toByteArray());
+    }
+
+    public static TaskCompletion getCompletion(ACLMessage msg) {
+        try (DataInputStream in = input(msg)) {
+            return new TaskCompletion(in.readUTF(), in.readLong());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed task completion from " + msg.getSender(), e);
+        }
+    }
+
+    // Termination credit: the exponent, then the numerator's two's-complement bytes
+    public static void putCredit(ACLMessage msg, Credit credit) {
+        byte[] numerator = credit.numerator().toByteArray();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8 + numerator.length);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(credit.exponent());
+            out.writeInt(numerator.length);
+            out.write(numerator);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        msg.setByteSequenceContent(bytes.toByteArray());
+    }
+
+    public static Credit getCredit(ACLMessage msg) {
+        try (DataInputStream in = input(msg)) {
+            int exponent = in.readInt();
+            int length = in.readInt();
+            if (length <= 0 || length > in.available()) throw new IOException("Bad numerator length " + length);
+            byte[] numerator = new byte[length];
+            in.readFully(numerator);
+            return Credit.of(new BigInteger(numerator), exponent);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed credit from " + msg.getSender(), e);
+        }
+    }
+
+    public static void putLoadSummary(ACLMessage msg, LoadSummary summary) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8 + 12 * summary.capacities().length);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(summary.placed());
+            out.writeInt(summary.capacities().length);
+            for (int i = 0; i < summary.capacities().length; i++) {
+                out.writeInt(summary.capacities()[i]);
+                out.writeDouble(summary.minTimes()[i]);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        msg.setByteSequenceContent(bytes.toByteArray());
+    }
+
+    public static LoadSummary getLoadSummary(ACLMessage msg) {
+        try (DataInputStream in = input(msg)) {
+            int placed = in.readInt();
+            int size = in.readInt();
+            int[] capacities = new int[size];
+            double[] minTimes = new double[size];
+            for (int i = 0; i < size; i++) {
+                capacities[i] = in.readInt();
+                minTimes[i] = in.readDouble();
+            }
+            return new LoadSummary(placed, capacities, minTimes);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed load summary from " + msg.getSender(), e);
+        }
+    }
+
+    private static DataInputStream input(ACLMessage msg) {
+        byte[] content = msg.getByteSequenceContent();
+        if (content == null) content = new byte[0];
+        return new DataInputStream(new ByteArrayInputStream(content));
+    }
+}
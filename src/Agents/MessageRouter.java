@@ -0,0 +1,75 @@
+package Agents;
+
+import jade.core.Agent;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * The only behaviour of an agent that reads its mailbox. Each wakeup drains the queue in
+ * arrival order and hands every message to the handler registered for its performative
+ * and ontology, falling back to the handler for the performative alone; messages nobody
+ * handles are dropped instead of piling up. Notifications from the DF are left in the
+ * mailbox for the agent's DFSubscriber behaviours.
+ */
+public class MessageRouter extends CyclicBehaviour {
+    // Messages handled per wakeup before other behaviours get a turn
+    private static final int MAX_PER_WAKEUP = 256;
+
+    private final List<Map<String, Consumer<ACLMessage>>> byOntology;
+    private final List<Consumer<ACLMessage>> byPerformative;
+    private final MessageTemplate template;
+
+    public MessageRouter(Agent agent) {
+        super(agent);
+        int performatives = ACLMessage.getAllPerformativeNames().length;
+        byOntology = new ArrayList<>(Collections.nCopies(performatives, null));
+        byPerformative = new ArrayList<>(Collections.nCopies(performatives, null));
+        template = MessageTemplate.not(MessageTemplate.MatchSender(agent.getDefaultDF()));
+    }
+
+    public MessageRouter on(int performative, String ontology, Consumer<ACLMessage> handler) {
+        if (byOntology.get(performative) == null) byOntology.set(performative, new HashMap<>());
+        byOntology.get(performative).put(ontology, handler);
+        return this;
+    }
+
+    /**
+     * Handler for messages of the performative whose ontology has no handler of its own.
+     */
+    public MessageRouter on(int performative, Consumer<ACLMessage> handler) {
+        byPerformative.set(performative, handler);
+        return this;
+    }
+
+    public void action() {
+        for (int i = 0; i < MAX_PER_WAKEUP; i++) {
+            ACLMessage msg = myAgent.receive(template);
+            if (msg == null) {
+                // Mailbox drained: the agent may be done, which termination detection needs to know
+                if (myAgent instanceof CreditAgent agent) agent.passive();
+                block();
+                return;
+            }
+            route(msg);
+        }
+        // Mailbox not empty yet: stay runnable and continue on the next pass
+    }
+
+    private void route(ACLMessage msg) {
+        int performative = msg.getPerformative();
+        if (performative < 0 || performative >= byPerformative.size()) return;
+        Consumer<ACLMessage> handler = null;
+        Map<String, Consumer<ACLMessage>> handlers = byOntology.get(performative);
+        if (handlers != null && msg.getOntology() != null) handler = handlers.get(msg.getOntology());
+        if (handler == null) handler = byPerformative.get(performative);
+        if (handler != null) handler.accept(msg);
+    }
+}
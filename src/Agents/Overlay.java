@@ -0,0 +1,55 @@
+package Agents;
+
+import jade.core.AID;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Sparse neighbour graph over the computers. Every computer derives it locally from the
+ * same membership list, sorted by name, so no coordination is needed: "ring" links each
+ * computer to the next and previous one, "hypercube" to the computers whose index differs
+ * in one bit (missing corners are skipped, which keeps it connected), and "random" to the
+ * degree / 2 nearest on both sides of a ring shuffled with "overlaySeed", which gives a
+ * random degree-regular graph that is always connected.
+ */
+public final class Overlay {
+    private Overlay() {
+    }
+
+    public static List<AID> neighbours(List<AID> members, AID self, String kind, int degree, long seed) {
+        List<AID> order = new ArrayList<>(members);
+        order.sort(Comparator.comparing(AID::getName));
+        if (kind.equals("random")) Collections.shuffle(order, new Random(seed));
+        int n = order.size();
+        int me = order.indexOf(self);
+        Set<AID> result = new LinkedHashSet<>();
+        if (me < 0 || n < 2) return new ArrayList<>(result);
+
+        switch (kind) {
+            case "ring":
+                result.add(order.get((me + 1) % n));
+                result.add(order.get((me + n - 1) % n));
+                break;
+            case "hypercube":
+                for (int bit = 1; bit < n; bit <<= 1)
+                    if ((me ^ bit) < n) result.add(order.get(me ^ bit));
+                break;
+            case "random":
+                for (int step = 1; step <= Math.max(1, degree / 2); step++) {
+                    result.add(order.get((me + step) % n));
+                    result.add(order.get(((me - step) % n + n) % n));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown overlay " + kind);
+        }
+        result.remove(self);
+        return new ArrayList<>(result);
+    }
+}
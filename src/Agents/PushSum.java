@@ -0,0 +1,37 @@
+package Agents;
+
+/**
+ * Push-sum estimate of the average load. The node keeps a sum and a weight; each round it
+ * keeps one share and sends the others to its neighbours, and every share received is added
+ * in. The ratio sum / weight tends to the global average. Local load changes (tasks placed,
+ * moved or finished) are folded into the sum when observed, so the total mass always equals
+ * the total load, counting the shares and tasks still in flight.
+ */
+public final class PushSum {
+    private double sum = 0;
+    private double weight = 1;
+    private double observed = 0;
+
+    public void observe(double load) {
+        sum += load - observed;
+        observed = load;
+    }
+
+    /**
+     * Keeps 1 / parts of the mass and returns one of the other equal shares as {sum, weight}.
+     */
+    public double[] split(int parts) {
+        sum /= parts;
+        weight /= parts;
+        return new double[]{sum, weight};
+    }
+
+    public void merge(double shareSum, double shareWeight) {
+        sum += shareSum;
+        weight += shareWeight;
+    }
+
+    public double estimate() {
+        return weight > 0 ? sum / weight : observed;
+    }
+}
@@ -0,0 +1,60 @@
+package Agents;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Offers a computer has made and not yet seen accepted or rejected. Each offer holds
+ * the time its task would add, and the next proposals include their sum, so a burst
+ * of tasks sees every computer as if it took all the tasks still deciding; that favours
+ * the computers that absorb such a burst best instead of the one idle computer. An offer
+ * is dropped on ACCEPT or REJECT, or once the timeout passes without an answer.
+ */
+public final class Reservations<K> {
+    private final long timeoutMillis;
+    // Insertion order is expiry order, since every offer lives for the same time
+    private final Map<K, Offer> offers = new LinkedHashMap<>();
+    private double pending = 0;
+
+    private record Offer(double time, long expiresAt) {
+    }
+
+    public Reservations(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Tentative load of the offers still open.
+     */
+    public double reserved(long now) {
+        for (Iterator<Offer> it = offers.values().iterator(); it.hasNext(); ) {
+            Offer offer = it.next();
+            if (offer.expiresAt() > now) break;
+            pending -= offer.time();
+            it.remove();
+        }
+        // No rounding drift once nothing is open
+        if (offers.isEmpty()) pending = 0;
+        return pending;
+    }
+
+    /**
+     * Records an offer; a new offer to the same key replaces the old one.
+     */
+    public void offer(K key, double time, long now) {
+        if (timeoutMillis <= 0) return;
+        release(key);
+        offers.put(key, new Offer(time, now + timeoutMillis));
+        pending += time;
+    }
+
+    public void release(K key) {
+        Offer offer = offers.remove(key);
+        if (offer != null) pending -= offer.time();
+    }
+
+    public int size() {
+        return offers.size();
+    }
+}
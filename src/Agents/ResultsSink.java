@@ -0,0 +1,102 @@
+package Agents;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import jade.core.AID;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Allocation results. Every computer streams its own segment file when it terminates,
+ * so writers never touch a shared file and never wait for each other. The segments
+ * are merged into results.json once the platform is down, or on demand via main.
+ */
+public final class ResultsSink {
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final File RESULTS_FILE = new File(Settings.getString("resultsFile", "src/Files/results.json"));
+    private static final File SEGMENTS_DIR = new File(Settings.getString("resultsSegments", "src/Files/results"));
+
+    private ResultsSink() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        merge();
+    }
+
+    /**
+     * Removes the segments of a previous run and leaves an empty results.json.
+     */
+    public static synchronized void reset() throws IOException {
+        File[] old = SEGMENTS_DIR.listFiles();
+        if (old != null) for (File segment : old) Files.delete(segment.toPath());
+        Files.createDirectories(SEGMENTS_DIR.toPath());
+        try (JsonGenerator out = JSON.createGenerator(RESULTS_FILE, JsonEncoding.UTF8)) {
+            out.writeStartObject();
+            out.writeEndObject();
+        }
+    }
+
+    /**
+     * Writes the computer's segment. The file appears under its final name only when complete.
+     */
+    public static void write(String computerName, int capacity, double totalTime,
+                             Iterable<Map.Entry<AID, Integer>> tasks) throws IOException {
+        Files.createDirectories(SEGMENTS_DIR.toPath());
+        // Agent names contain '@', ':' and '/', so the file name is the encoded name
+        String fileName = URLEncoder.encode(computerName, StandardCharsets.UTF_8);
+        Path segment = new File(SEGMENTS_DIR, fileName + ".json").toPath();
+        Path partial = new File(SEGMENTS_DIR, fileName + ".json.tmp").toPath();
+
+        try (JsonGenerator out = JSON.createGenerator(partial.toFile(), JsonEncoding.UTF8)) {
+            out.writeStartObject();
+            out.writeNumberField("capacity", capacity);
+            out.writeArrayFieldStart("tasks");
+            for (Map.Entry<AID, Integer> entry : tasks) {
+                out.writeStartObject();
+                out.writeStringField("name", entry.getKey().getName());
+                out.writeNumberField("complexity", entry.getValue());
+                out.writeEndObject();
+            }
+            out.writeEndArray();
+            out.writeNumberField("total_time", totalTime);
+            out.writeEndObject();
+        }
+        Files.move(partial, segment, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Streams every complete segment into results.json, keyed by computer name.
+     */
+    public static synchronized void merge() throws IOException {
+        File[] segments = SEGMENTS_DIR.listFiles((dir, name) -> name.endsWith(".json"));
+        if (segments == null) segments = new File[0];
+        Arrays.sort(segments);
+
+        try (JsonGenerator out = JSON.createGenerator(RESULTS_FILE, JsonEncoding.UTF8)) {
+            out.useDefaultPrettyPrinter();
+            out.writeStartObject();
+            for (File segment : segments) {
+                String name = segment.getName();
+                out.writeFieldName(URLDecoder.decode(name.substring(0, name.length() - ".json".length()),
+                        StandardCharsets.UTF_8));
+                try (JsonParser in = JSON.createParser(segment)) {
+                    in.nextToken();
+                    out.copyCurrentStructure(in);
+                }
+            }
+            out.writeEndObject();
+        }
+        System.out.println("ResultsSink merged " + segments.length + " segments into " + RESULTS_FILE.getPath());
+    }
+}
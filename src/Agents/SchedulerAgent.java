@@ -0,0 +1,104 @@
+package Agents;
+
+import jade.core.AID;
+import jade.lang.acl.ACLMessage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Batch owner that computes the whole assignment up front. It asks every computer for its
+ * capacity and current total time, runs MakespanScheduler over the batch and pushes one
+ * assignment per computer through the usual "Batch" accept path. The schedule is marked so
+ * that computers skip pair balancing.
+ */
+public class SchedulerAgent extends BatchOwnerAgent<ComputerInfo> {
+    // Define variables
+    private List<String> taskNames = new ArrayList<>();
+    private int[] complexities = new int[0];
+    private Map<String, AID> placement = new HashMap<>();
+    private int maxMoves = Settings.getInt("schedulerMaxMoves", 100000);
+    private long scheduledIn = 0;
+
+    public SchedulerAgent() {
+        super("Schedule", "JADE-Scheduler");
+    }
+
+    protected void setup() {
+        // Filling variables: arguments are pairs of task name and complexity
+        Object[] args = getArguments();
+        if (args != null) {
+            complexities = new int[args.length / 2];
+            for (int i = 0; i < complexities.length; i++) {
+                taskNames.add((String) args[2 * i]);
+                complexities[i] = Integer.parseInt((String) args[2 * i + 1]);
+            }
+        }
+
+        super.setup();
+        startRound();
+
+        System.out.println("SchedulerAgent " + getAID().getName() + " is ready. Batch size=" + taskNames.size());
+    }
+
+    protected void takeDown() {
+        super.takeDown();
+        System.out.println("SchedulerAgent " + getAID().getName() + " is terminated.");
+    }
+
+    protected int[] roundComplexities() {
+        return complexities;
+    }
+
+    protected String taskName(int i) {
+        return taskNames.get(i);
+    }
+
+    protected void prepare(ACLMessage cfp, int[] complexities) {
+        // Computers are only asked for capacity and current total time
+    }
+
+    protected ComputerInfo proposal(ACLMessage reply) {
+        return MessageCodec.getComputerInfo(reply);
+    }
+
+    protected int[] assign(List<AID> computers, List<ComputerInfo> proposals, int[] complexities) {
+        int[] capacities = new int[computers.size()];
+        double[] times = new double[computers.size()];
+        // The cost of reaching a computer is scheduled as if it were already there
+        double[] costs = Locality.costs(this, computers);
+        for (int c = 0; c < computers.size(); c++) {
+            capacities[c] = proposals.get(c).capacity();
+            times[c] = proposals.get(c).totalTime() + costs[c];
+        }
+
+        long start = System.nanoTime();
+        int[] assignment = MakespanScheduler.schedule(complexities, capacities, times, maxMoves);
+        scheduledIn = (System.nanoTime() - start) / 1_000_000;
+        return assignment;
+    }
+
+    protected void placed(int i, AID computer) {
+        placement.put(taskNames.get(i), computer);
+    }
+
+    // The schedule goes through the same "Batch" accept path as the dispatcher's batches, marked as final
+    protected void mark(ACLMessage msg) {
+        msg.addUserDefinedParameter("skip-balancing", "true");
+    }
+
+    protected void roundAssigned(int tasks, int computers) {
+        System.out.println("SchedulerAgent " + getAID().getName() + " scheduled " + tasks +
+                " tasks on " + computers + " computers in " + scheduledIn + " ms.");
+    }
+
+    protected void moved(String task, AID computer) {
+        placement.put(task, computer);
+    }
+
+    protected boolean allPlaced() {
+        return placement.size() == taskNames.size();
+    }
+}
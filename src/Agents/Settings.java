@@ -0,0 +1,53 @@
+package Agents;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+
+public final class Settings {
+    private static final String SETTINGS_FILE = "src/Files/settings.json";
+    private static JsonNode root;
+
+    private Settings() {
+    }
+
+    private static synchronized JsonNode root() {
+        if (root == null) {
+            try {
+                File file = new File(SETTINGS_FILE);
+                root = file.exists() ? new ObjectMapper().readTree(file) : new ObjectMapper().createObjectNode();
+            } catch (IOException e) {
+                System.err.println("Warning: Could not read settings.json, using default values");
+                root = new ObjectMapper().createObjectNode();
+            }
+        }
+        return root;
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        JsonNode value = root().path(key);
+        return value.isMissingNode() ? defaultValue : value.asBoolean(defaultValue);
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        JsonNode value = root().path(key);
+        return value.isMissingNode() ? defaultValue : value.asInt(defaultValue);
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        JsonNode value = root().path(key);
+        return value.isMissingNode() ? defaultValue : value.asLong(defaultValue);
+    }
+
+    public static double getDouble(String key, double defaultValue) {
+        JsonNode value = root().path(key);
+        return value.isMissingNode() ? defaultValue : value.asDouble(defaultValue);
+    }
+
+    public static String getString(String key, String defaultValue) {
+        JsonNode value = root().path(key);
+        return value.isMissingNode() ? defaultValue : value.asText(defaultValue);
+    }
+}
@@ -0,0 +1,21 @@
+package Agents;
+
+import Metrics.MeteredAgent;
+import jade.core.AID;
+import jade.lang.acl.ACLMessage;
+
+/**
+ * Tells the TerminationAgent how many agents a client started, once it has started all of
+ * them, and leaves. Argument: the number of agents.
+ */
+public class SubmissionAgent extends MeteredAgent {
+    protected void setup() {
+        Object[] args = getArguments();
+        ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+        msg.setOntology("Submitted");
+        MessageCodec.putLong(msg, args != null && args.length > 0 ? Long.parseLong((String) args[0]) : 0);
+        msg.addReceiver(new AID(CreditAgent.TERMINATION, AID.ISLOCALNAME));
+        transmit(msg);
+        doDelete();
+    }
+}
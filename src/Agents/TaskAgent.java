@@ -1,27 +1,31 @@
 package Agents;
 
+import Metrics.MetricsRegistry;
 import jade.core.AID;
-import jade.core.Agent;
-import jade.core.behaviours.CyclicBehaviour;
 import jade.core.behaviours.OneShotBehaviour;
-import jade.domain.DFService;
+import jade.core.behaviours.WakerBehaviour;
 import jade.domain.FIPAAgentManagement.DFAgentDescription;
 import jade.domain.FIPAAgentManagement.ServiceDescription;
 import jade.domain.FIPAException;
 import jade.lang.acl.ACLMessage;
-import jade.lang.acl.MessageTemplate;
 
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 
-public class TaskAgent extends Agent {
+public class TaskAgent extends CreditAgent {
     // Define variables
     private int complexity;
     private AID myComputer;
     private Map<AID, Double> computers = new HashMap<>();
+    private long proposalTimeout = Settings.getLong("proposalTimeout", 5000);
+    private int round = 0;
+    private boolean useBrokers = Settings.getInt("brokerGroupSize", 0) > 0;
+    private long startedAt;
 
     protected void setup() {
+        startedAt = System.nanoTime();
+
         // Filling variables
         Object[] args = getArguments();
         if (args != null && args.length > 0)
@@ -36,18 +40,22 @@ public class TaskAgent extends Agent {
         sd.setName("JADE-Task");
         dfd.addServices(sd);
         try {
-            DFService.register(this, dfd);
+            DirectoryCache.register(this, dfd);
         }
         catch (FIPAException fe) {
             fe.printStackTrace();
         }
 
+        registerMetrics();
+
         // Add Behaviours
-        addBehaviour(new SearchComputersBehaviour());
-        addBehaviour(new AnswersGetBehaviour());
-        addBehaviour(new ComputerConfirmationBehaviour());
-        addBehaviour(new RemoveBehaviour());
-        addBehaviour(new AnswerBehaviour());
+        search();
+        // One router reads the mailbox and hands messages over by performative and ontology
+        addBehaviour(new MessageRouter(this)
+                .on(ACLMessage.PROPOSE, this::onProposal)
+                .on(ACLMessage.INFORM, "Broker", this::onPlacement)
+                .on(ACLMessage.INFORM, "Remove", this::onRemove)
+                .on(ACLMessage.INFORM, "Question", this::onQuestion));
 
         System.out.println("TaskAgent " + getAID().getName() + " is ready.");
     }
@@ -55,107 +63,195 @@ public class TaskAgent extends Agent {
     protected void takeDown(){
         // Deregister in yellow pages
         try {
-            DFService.deregister(this);
+            DirectoryCache.deregister(this);
         }
         catch (FIPAException fe) {
             fe.printStackTrace();
         }
+        unregisterMetrics();
 
         System.out.println("TaskAgent " + getAID().getName() + " is terminated.");
     }
 
     private  class SearchComputersBehaviour extends OneShotBehaviour {
         public void action() {
-            // Search in yellow pages
-            DFAgentDescription template = new DFAgentDescription();
-            ServiceDescription sd = new ServiceDescription();
-            sd.setType("task-executing");
-            template.addServices(sd);
+            // Search in yellow pages, through the container's cache
+            computers.clear();
             try {
-                DFAgentDescription[] result = DFService.search(myAgent, template);
-                for (DFAgentDescription res : result) computers.put(res.getName(), null);
+                for (AID computer : DirectoryCache.of(myAgent).search(myAgent, "task-executing")) computers.put(computer, null);
             }
             catch (FIPAException fe) {
                 fe.printStackTrace();
             }
 
-            // Send task to computers
+            // Send task to computers; replies to older rounds are ignored
+            round++;
             ACLMessage cfp = new ACLMessage(ACLMessage.CFP);
             for (AID computer: computers.keySet()) cfp.addReceiver(computer);
-            cfp.setContent(String.valueOf(complexity));
-            send(cfp);
+            MessageCodec.putInt(cfp, complexity);
+            cfp.setReplyWith(getLocalName() + "-" + round);
+            if (!computers.isEmpty()) transmit(cfp);
+
+            // Decide on whatever has arrived when the deadline expires
+            addBehaviour(new ProposalDeadlineBehaviour(round));
         }
     }
 
-    private class AnswersGetBehaviour extends CyclicBehaviour {
+    private void search() {
+        addBehaviour(useBrokers ? new AskBrokerBehaviour() : new SearchComputersBehaviour());
+    }
+
+    private class AskBrokerBehaviour extends OneShotBehaviour {
         public void action() {
-            // Getting execution times from computers
-            ACLMessage reply = receive(MessageTemplate.MatchPerformative(ACLMessage.PROPOSE));
-            if (reply != null && myComputer == null)
-                computers.put(reply.getSender(), Double.parseDouble(reply.getContent()));
-            else block();
+            // Search brokers in yellow pages, through the container's cache; tasks are spread over them by name
+            AID[] brokers = new AID[0];
+            try {
+                brokers = DirectoryCache.of(myAgent).search(myAgent, "task-broker");
+            }
+            catch (FIPAException fe) {
+                fe.printStackTrace();
+            }
+
+            // One CFP to one broker instead of one to every computer
+            round++;
+            if (brokers.length > 0) {
+                ACLMessage cfp = new ACLMessage(ACLMessage.CFP);
+                cfp.setOntology("Broker");
+                cfp.addReceiver(brokers[Math.floorMod(getLocalName().hashCode(), brokers.length)]);
+                MessageCodec.putInt(cfp, complexity);
+                cfp.setReplyWith(getLocalName() + "-" + round);
+                transmit(cfp);
+            }
+
+            addBehaviour(new ProposalDeadlineBehaviour(round));
         }
     }
 
-    private class ComputerConfirmationBehaviour extends CyclicBehaviour {
-        public void action() {
-            if (!computers.containsValue(null) && myComputer == null) {
-                // Computer set
-                double bestTime = Double.MAX_VALUE;
-                AID bestComputer = null;
-                for (Map.Entry<AID, Double> entry : computers.entrySet()) {
-                    if (entry.getValue() < bestTime) {
-                        bestTime = entry.getValue();
-                        bestComputer = entry.getKey();
-                    }
-                }
-                myComputer = bestComputer;
-
-                // Answers to computers
-                ACLMessage accept = new ACLMessage(ACLMessage.ACCEPT_PROPOSAL);
-                ACLMessage reject = new ACLMessage(ACLMessage.REJECT_PROPOSAL);
-                for (AID computer : computers.keySet()) {
-                    if (Objects.equals(computer.getName(), myComputer.getName())) {
-                        accept.addReceiver(computer);
-                        accept.setContent(String.valueOf(complexity));
-                    }
-                    else reject.addReceiver(computer);
-                }
-                send(accept);
-                send(reject);
+    private void onPlacement(ACLMessage placement) {
+        // Getting the computer chosen by a broker
+        if (myComputer == null && (getLocalName() + "-" + round).equals(placement.getInReplyTo())) {
+            myComputer = new AID(MessageCodec.getName(placement), AID.ISGUID);
+            recordAllocation();
+        }
+    }
+
+    private void onProposal(ACLMessage reply) {
+        // Getting execution times from computers
+        if (myComputer == null && (getLocalName() + "-" + round).equals(reply.getInReplyTo())
+                && computers.containsKey(reply.getSender())) {
+            computers.put(reply.getSender(), MessageCodec.getDouble(reply));
+            // The proposal that completes the set triggers the decision
+            if (!computers.containsValue(null)) chooseComputer();
+        }
+    }
+
+    private class ProposalDeadlineBehaviour extends WakerBehaviour {
+        private final int deadlineRound;
+
+        public ProposalDeadlineBehaviour(int deadlineRound) {
+            super(TaskAgent.this, proposalTimeout);
+            this.deadlineRound = deadlineRound;
+        }
+
+        protected void onWake() {
+            if (myComputer != null || deadlineRound != round) return;
+            if (computers.values().stream().anyMatch(Objects::nonNull)) {
+                System.out.println("TaskAgent " + getAID().getName() + " deciding on partial proposals.");
+                chooseComputer();
             }
+            // Nobody answered in time: ask again
+            else search();
+            passive();
         }
     }
 
-    private class RemoveBehaviour extends CyclicBehaviour {
-        public void action() {
-            // Getting info of remove task from computer
-            ACLMessage info = receive(MessageTemplate.and(
-                    MessageTemplate.MatchOntology("Remove"),
-                    MessageTemplate.MatchPerformative(ACLMessage.INFORM)));
-            if (info != null) {
-                myComputer = null;
-                addBehaviour(new SearchComputersBehaviour());
+    // Until a computer is chosen the task keeps searching on its own deadlines
+    protected boolean isBusy() {
+        return myComputer == null;
+    }
+
+    private void chooseComputer() {
+        // Computer set; the cost of reaching a computer counts as part of its finish time
+        myComputer = bestProposal(withTransferCost(computers));
+        recordAllocation();
+
+        // Answers to computers, including those that did not answer in time
+        ACLMessage accept = new ACLMessage(ACLMessage.ACCEPT_PROPOSAL);
+        ACLMessage reject = new ACLMessage(ACLMessage.REJECT_PROPOSAL);
+        for (AID computer : computers.keySet()) {
+            if (Objects.equals(computer.getName(), myComputer.getName())) {
+                accept.addReceiver(computer);
+                MessageCodec.putInt(accept, complexity);
             }
-            else block();
+            else reject.addReceiver(computer);
         }
+        transmit(accept);
+        if (reject.getAllReceiver().hasNext()) transmit(reject);
     }
 
-    private class AnswerBehaviour extends CyclicBehaviour {
-        public void action() {
-            // Answer to question
-            ACLMessage question = receive(MessageTemplate.and(
-                    MessageTemplate.MatchOntology("Question"),
-                    MessageTemplate.MatchPerformative(ACLMessage.INFORM)));
-            if (question != null) {
-                ACLMessage answer = new ACLMessage(ACLMessage.INFORM);
-                answer.setOntology("Answer");
-                boolean ans = myComputer != null;
-                answer.setContent(String.valueOf(ans));
-                answer.addReceiver(question.getSender());
-                send(answer);
+    private Map<AID, Double> withTransferCost(Map<AID, Double> proposals) {
+        Locality here = Locality.of(this);
+        DirectoryCache directory = DirectoryCache.of(this);
+        Map<AID, Double> weighed = new HashMap<>();
+        for (Map.Entry<AID, Double> entry : proposals.entrySet())
+            weighed.put(entry.getKey(), entry.getValue() == null ? null
+                    : entry.getValue() + here.cost(directory.locality(entry.getKey())));
+        return weighed;
+    }
+
+    private void recordAllocation() {
+        // Only the first placement counts; later moves come from balancing
+        if (startedAt == 0) return;
+        MetricsRegistry.get().allocated((System.nanoTime() - startedAt) / 1000);
+        if (Locality.isLocal(this, myComputer)) MetricsRegistry.get().placedLocally(1);
+        startedAt = 0;
+    }
+
+    /**
+     * Computer with the earliest proposed finish time; computers that have not answered are skipped.
+     */
+    public static AID bestProposal(Map<AID, Double> proposals) {
+        double bestTime = Double.MAX_VALUE;
+        AID bestComputer = null;
+        for (Map.Entry<AID, Double> entry : proposals.entrySet()) {
+            if (entry.getValue() != null && entry.getValue() < bestTime) {
+                bestTime = entry.getValue();
+                bestComputer = entry.getKey();
             }
-            else block();
         }
+        return bestComputer;
+    }
+
+    private void onRemove(ACLMessage info) {
+        // The task has been handed over to another computer during balancing
+        TaskRemoval removal = MessageCodec.getRemoval(info);
+        if (!removal.tasks().isEmpty()) {
+            myComputer = new AID(removal.computer(), AID.ISGUID);
+            pushState();
+        }
+        else {
+            myComputer = null;
+            search();
+        }
+    }
+
+    private void pushState() {
+        // Tell my computer about the change instead of waiting to be asked
+        if (myComputer == null) return;
+        ACLMessage state = new ACLMessage(ACLMessage.INFORM);
+        state.setOntology("Answer");
+        MessageCodec.putBoolean(state, true);
+        state.addReceiver(myComputer);
+        transmit(state);
+    }
+
+    private void onQuestion(ACLMessage question) {
+        // Answer to question (asked once by computers that started after this task)
+        ACLMessage answer = new ACLMessage(ACLMessage.INFORM);
+        answer.setOntology("Answer");
+        boolean ans = myComputer != null;
+        MessageCodec.putBoolean(answer, ans);
+        answer.addReceiver(question.getSender());
+        transmit(answer);
     }
 }
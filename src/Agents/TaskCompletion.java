@@ -0,0 +1,7 @@
+package Agents;
+
+/**
+ * A task a computer has finished executing: its agent name and how long it ran, in nanoseconds.
+ */
+public record TaskCompletion(String task, long nanos) {
+}
@@ -0,0 +1,76 @@
+package Agents;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Compact table of task names for the task pool: names are UTF-8 bytes in one buffer,
+ * found by offset, and an open-addressing table of indexes finds a name again without
+ * a String or a boxed Integer per task.
+ */
+final class TaskNames {
+    private byte[] bytes = new byte[1 << 14];
+    // Name i spans offsets[i] to offsets[i + 1]
+    private int[] offsets = new int[1025];
+    private int count = 0;
+    // Index + 1 of the name hashed to each slot, 0 for an empty slot
+    private int[] slots = new int[2048];
+
+    /**
+     * Adds a name and returns its index; indexes follow the order of adding.
+     */
+    int add(String name) {
+        byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+        int start = offsets[count];
+        if (start + encoded.length > bytes.length)
+            bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, start + encoded.length));
+        if (count + 2 > offsets.length) offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+        System.arraycopy(encoded, 0, bytes, start, encoded.length);
+        offsets[count + 1] = start + encoded.length;
+
+        // At most half full, so probes stay short
+        if (2 * (count + 1) > slots.length) rehash(2 * slots.length);
+        insert(count);
+        return count++;
+    }
+
+    String name(int index) {
+        return new String(bytes, offsets[index], offsets[index + 1] - offsets[index], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Index of the name, or -1 if it was never added.
+     */
+    int indexOf(String name) {
+        byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+        int mask = slots.length - 1;
+        for (int slot = hash(encoded, 0, encoded.length) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int index = slots[slot] - 1;
+            if (Arrays.equals(bytes, offsets[index], offsets[index + 1], encoded, 0, encoded.length)) return index;
+        }
+        return -1;
+    }
+
+    int size() {
+        return count;
+    }
+
+    private void insert(int index) {
+        int mask = slots.length - 1;
+        int slot = hash(bytes, offsets[index], offsets[index + 1]) & mask;
+        while (slots[slot] != 0) slot = (slot + 1) & mask;
+        slots[slot] = index + 1;
+    }
+
+    private void rehash(int size) {
+        slots = new int[size];
+        for (int index = 0; index < count; index++) insert(index);
+    }
+
+    private static int hash(byte[] data, int from, int to) {
+        int h = 1;
+        for (int i = from; i < to; i++) h = 31 * h + data[i];
+        // Spread the high bits into the masked ones
+        return h ^ (h >>> 16);
+    }
+}
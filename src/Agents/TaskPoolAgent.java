@@ -0,0 +1,176 @@
+package Agents;
+
+import jade.core.AID;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.lang.acl.ACLMessage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Owner of all tasks of a container, kept as plain data instead of one agent per task.
+ * Task i keeps the name it was fed with, in a compact name table, and is stored in
+ * parallel int arrays; the pool places them a window at a time, one round per window,
+ * and follows the "Remove" messages of balancing. Tasks are fed through the Feed
+ * interface, ended by END_OF_TASKS.
+ */
+public class TaskPoolAgent extends BatchOwnerAgent<double[]> {
+    public static final Object END_OF_TASKS = new Object();
+
+    // Define variables
+    private TaskNames names = new TaskNames();
+    private int[] complexities = new int[1024];
+    private int[] computerOf = new int[1024];
+    private int count = 0;
+    private int placed = 0;
+    private boolean ended = false;
+    private List<AID> computerTable = new ArrayList<>();
+    private Map<AID, Integer> computerIndex = new HashMap<>();
+
+    // Window in flight: tasks [windowStart, windowEnd) wait for proposals of one round
+    private int windowSize = Settings.getInt("poolWindow", 1000);
+    private int windowStart = 0;
+    private int windowEnd = 0;
+
+    // Tasks fed but not yet taken into the arrays; the feeder waits once the queue is full
+    private final int queueSize = Settings.getInt("poolQueue", 10000);
+    private final Semaphore freeSlots = new Semaphore(queueSize);
+
+    /**
+     * How a client hands tasks to the pool, obtained with getO2AInterface.
+     */
+    public interface Feed {
+        // Blocks while the pool's queue is full
+        void put(Object task) throws InterruptedException;
+    }
+
+    public TaskPoolAgent() {
+        super("Batch", "JADE-TaskPool");
+        // Enabled before the agent starts: the client feeds tasks right after start, before setup has run.
+        // A full bounded queue drops its oldest entry, so nothing is put without a free slot
+        setEnabledO2ACommunication(true, queueSize);
+        registerO2AInterface(Feed.class, this::feed);
+    }
+
+    private void feed(Object task) throws InterruptedException {
+        freeSlots.acquire();
+        putO2AObject(task, false);
+    }
+
+    protected void setup() {
+        super.setup();
+        addBehaviour(new FeedBehaviour());
+
+        System.out.println("TaskPoolAgent " + getAID().getName() + " is ready. Window=" + windowSize);
+    }
+
+    protected void takeDown() {
+        super.takeDown();
+        System.out.println("TaskPoolAgent " + getAID().getName() + " is terminated. Placed " + placed + " of " + count + " tasks.");
+    }
+
+    private class FeedBehaviour extends CyclicBehaviour {
+        public void action() {
+            // Taking new tasks from the client
+            Object fed = getO2AObject();
+            if (fed == null) {
+                passive();
+                block();
+                return;
+            }
+            boolean wasEnded = ended;
+            while (fed != null) {
+                freeSlots.release();
+                if (fed == END_OF_TASKS) ended = true;
+                else add((TaskSource.Task) fed);
+                fed = getO2AObject();
+            }
+            if (windowStart == windowEnd) nextWindow();
+            // The last window went out before the end was known: tell its computers now
+            if (ended && !wasEnded && placed == count) pushState();
+        }
+    }
+
+    private void add(TaskSource.Task task) {
+        if (count == complexities.length) {
+            int size = complexities.length * 2;
+            complexities = Arrays.copyOf(complexities, size);
+            computerOf = Arrays.copyOf(computerOf, size);
+        }
+        names.add(task.name());
+        complexities[count] = task.complexity();
+        computerOf[count] = -1;
+        count++;
+    }
+
+    private void nextWindow() {
+        windowStart = windowEnd;
+        if (windowStart == count) return;
+        windowEnd = Math.min(count, windowStart + windowSize);
+        startRound();
+    }
+
+    protected int[] roundComplexities() {
+        return Arrays.copyOfRange(complexities, windowStart, windowEnd);
+    }
+
+    protected String taskName(int i) {
+        return names.name(windowStart + i);
+    }
+
+    protected void prepare(ACLMessage cfp, int[] complexities) {
+        // The whole window in one CFP
+        MessageCodec.putInts(cfp, complexities);
+    }
+
+    protected double[] proposal(ACLMessage reply) {
+        return MessageCodec.getDoubles(reply);
+    }
+
+    protected int[] assign(List<AID> computers, List<double[]> proposals, int[] complexities) {
+        return DispatcherAgent.assignGreedy(proposals, complexities.length, Locality.costs(this, computers));
+    }
+
+    protected void placed(int i, AID computer) {
+        computerOf[windowStart + i] = indexOf(computer);
+        placed++;
+    }
+
+    // Computers keep waiting for the pool while it has tasks to place or may still be fed
+    protected void mark(ACLMessage msg) {
+        if (!ended || placed < count) msg.addUserDefinedParameter("more-tasks", "true");
+    }
+
+    protected void roundAssigned(int tasks, int computers) {
+        nextWindow();
+    }
+
+    // Until it is fed completely and everything is placed the pool works through windows on its own deadlines
+    protected boolean isBusy() {
+        return !ended || placed < count;
+    }
+
+    private int indexOf(AID computer) {
+        Integer index = computerIndex.get(computer);
+        if (index == null) {
+            index = computerTable.size();
+            computerTable.add(computer);
+            computerIndex.put(computer, index);
+        }
+        return index;
+    }
+
+    protected void moved(String task, AID computer) {
+        int index = names.indexOf(task);
+        if (index >= 0) computerOf[index] = indexOf(computer);
+    }
+
+    // The pool counts as placed once it is fed completely and every task has a computer
+    protected boolean allPlaced() {
+        return ended && placed == count;
+    }
+}
@@ -0,0 +1,10 @@
+package Agents;
+
+import java.util.List;
+
+/**
+ * Tasks a computer has handed over during balancing, as told to their owner: the new
+ * computer's agent name and the local names of the moved tasks.
+ */
+public record TaskRemoval(String computer, List<String> tasks) {
+}
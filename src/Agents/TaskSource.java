@@ -0,0 +1,102 @@
+package Agents;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads tasks one at a time instead of loading the whole file. Two layouts are accepted:
+ * the tasks.json object ({"Task1": {"complexity": "10000"}, ...}) and NDJSON, one
+ * {"name": "Task1", "complexity": 10000} per line. NDJSON may come from a named pipe or
+ * from standard input ("-"), in which case reading blocks until the writer adds more.
+ */
+public final class TaskSource implements Iterator<TaskSource.Task>, Closeable {
+    public record Task(String name, int complexity) {
+    }
+
+    private final JsonParser parser;
+    private final boolean ndjson;
+    private Task next;
+    private boolean done;
+
+    public TaskSource(InputStream in, boolean ndjson) throws IOException {
+        this.parser = new JsonFactory().createParser(in);
+        this.ndjson = ndjson;
+        // The object layout is one root object; step inside it once
+        if (!ndjson && parser.nextToken() != JsonToken.START_OBJECT)
+            throw new IOException("Tasks file must be a JSON object");
+    }
+
+    /**
+     * Source named by the "tasksFile" setting; the layout comes from "tasksFormat" or the extension.
+     */
+    public static TaskSource open() throws IOException {
+        String path = Settings.getString("tasksFile", "src/Files/tasks.json");
+        String format = Settings.getString("tasksFormat", path.endsWith(".ndjson") || path.equals("-") ? "ndjson" : "json");
+        InputStream in = path.equals("-") ? System.in : new FileInputStream(path);
+        return new TaskSource(in, format.equals("ndjson"));
+    }
+
+    public boolean hasNext() {
+        if (next == null && !done) {
+            try {
+                next = ndjson ? readLine() : readField();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            done = next == null;
+        }
+        return next != null;
+    }
+
+    public Task next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        Task task = next;
+        next = null;
+        return task;
+    }
+
+    // "Task1": {"complexity": "10000"}
+    private Task readField() throws IOException {
+        if (parser.nextToken() != JsonToken.FIELD_NAME) return null;
+        String name = parser.currentName();
+        if (parser.nextToken() != JsonToken.START_OBJECT) throw new IOException("Task " + name + " must be an object");
+        return new Task(name, readFields(null));
+    }
+
+    // {"name": "Task1", "complexity": 10000}
+    private Task readLine() throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null) return null;
+        if (token != JsonToken.START_OBJECT) throw new IOException("Expected a task object at " + parser.currentLocation());
+        String[] name = new String[1];
+        int complexity = readFields(name);
+        if (name[0] == null) throw new IOException("Task without a name at " + parser.currentLocation());
+        return new Task(name[0], complexity);
+    }
+
+    // Reads the fields of the current task object; complexity may be a number or a string, as in tasks.json
+    private int readFields(String[] name) throws IOException {
+        int complexity = 100;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if (field.equals("complexity")) complexity = parser.getValueAsInt(100);
+            else if (field.equals("name") && name != null) name[0] = parser.getValueAsString();
+            else parser.skipChildren();
+        }
+        return complexity;
+    }
+
+    public void close() throws IOException {
+        parser.close();
+    }
+}
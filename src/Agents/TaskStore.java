@@ -0,0 +1,151 @@
+package Agents;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tasks held by a computer, indexed by complexity. Add and remove are O(log n),
+ * the total complexity is kept up to date, and the best task to hand over to a
+ * partner is found by looking up a handful of complexities instead of scanning.
+ */
+public class TaskStore<T> implements Iterable<Map.Entry<T, Integer>> {
+    private final TreeMap<Integer, LinkedHashSet<T>> byComplexity = new TreeMap<>();
+    private final Map<T, Integer> complexities = new LinkedHashMap<>();
+    private long totalComplexity = 0;
+
+    public void add(T task, int complexity) {
+        remove(task);
+        complexities.put(task, complexity);
+        byComplexity.computeIfAbsent(complexity, k -> new LinkedHashSet<>()).add(task);
+        totalComplexity += complexity;
+    }
+
+    /**
+     * Removes the task and returns its complexity, or -1 if the task is not held here.
+     */
+    public int remove(T task) {
+        Integer complexity = complexities.remove(task);
+        if (complexity == null) return -1;
+        LinkedHashSet<T> bucket = byComplexity.get(complexity);
+        bucket.remove(task);
+        if (bucket.isEmpty()) byComplexity.remove(complexity);
+        totalComplexity -= complexity;
+        return complexity;
+    }
+
+    public boolean contains(T task) {
+        return complexities.containsKey(task);
+    }
+
+    public int complexity(T task) {
+        return complexities.getOrDefault(task, -1);
+    }
+
+    public int size() {
+        return complexities.size();
+    }
+
+    public boolean isEmpty() {
+        return complexities.isEmpty();
+    }
+
+    public long totalComplexity() {
+        return totalComplexity;
+    }
+
+    public Iterator<Map.Entry<T, Integer>> iterator() {
+        return Collections.unmodifiableMap(complexities).entrySet().iterator();
+    }
+
+    /**
+     * Task whose transfer to the partner reduces the larger deviation from avgTime the most,
+     * or null if no task improves it. The deviation is convex in the transferred complexity,
+     * so the optimum sits next to one of its breakpoints and only those neighbours are checked.
+     */
+    public T bestTransfer(double myTime, int myCapacity, double partnerTime, int partnerCapacity, double avgTime) {
+        if (complexities.isEmpty()) return null;
+
+        double a = myTime - avgTime;
+        double b = partnerTime - avgTime;
+        double currentMaxDev = Math.max(Math.abs(a), Math.abs(b));
+        double invMine = 1.0 / myCapacity;
+        double invPartner = 1.0 / partnerCapacity;
+
+        double[] breakpoints = {
+                a * myCapacity,
+                -b * partnerCapacity,
+                (a - b) / (invMine + invPartner),
+                myCapacity == partnerCapacity ? Double.NaN : (a + b) / (invMine - invPartner)
+        };
+
+        Integer bestComplexity = null;
+        double bestImprovement = 0;
+        for (double x : breakpoints) {
+            if (Double.isNaN(x)) continue;
+            double key = Math.max(0, Math.min(x, Integer.MAX_VALUE));
+            Integer[] neighbours = {byComplexity.floorKey((int) Math.floor(key)), byComplexity.ceilingKey((int) Math.ceil(key))};
+            for (Integer complexity : neighbours) {
+                if (complexity == null) continue;
+                double newMaxDev = Math.max(Math.abs(a - complexity * invMine), Math.abs(b + complexity * invPartner));
+                double improvement = currentMaxDev - newMaxDev;
+                if (improvement > bestImprovement) {
+                    bestImprovement = improvement;
+                    bestComplexity = complexity;
+                }
+            }
+        }
+
+        return bestComplexity == null ? null : byComplexity.get(bestComplexity).iterator().next();
+    }
+
+    /**
+     * Task whose move to the partner gives the smallest later finish time of the two, or null
+     * if no move finishes both before myTime. The later finish time is convex in the moved
+     * complexity, so only the neighbours of its minimum are checked.
+     */
+    public T bestMakespanTransfer(double myTime, int myCapacity, double partnerTime, int partnerCapacity) {
+        if (complexities.isEmpty() || partnerTime >= myTime) return null;
+
+        double invMine = 1.0 / myCapacity;
+        double invPartner = 1.0 / partnerCapacity;
+        double key = Math.min((myTime - partnerTime) / (invMine + invPartner), Integer.MAX_VALUE);
+
+        Integer bestComplexity = null;
+        double bestFinish = myTime;
+        Integer[] neighbours = {byComplexity.floorKey((int) Math.floor(key)), byComplexity.ceilingKey((int) Math.ceil(key))};
+        for (Integer complexity : neighbours) {
+            if (complexity == null) continue;
+            double finish = Math.max(myTime - complexity * invMine, partnerTime + complexity * invPartner);
+            if (finish < bestFinish) {
+                bestFinish = finish;
+                bestComplexity = complexity;
+            }
+        }
+
+        return bestComplexity == null ? null : byComplexity.get(bestComplexity).iterator().next();
+    }
+
+    /**
+     * Greedily removes up to maxCount tasks that together bring both partners closest to avgTime.
+     * Each step takes the single best task for the loads left by the previous steps.
+     */
+    public List<Map.Entry<T, Integer>> pollTransfers(double myTime, int myCapacity, double partnerTime,
+                                                      int partnerCapacity, double avgTime, int maxCount) {
+        List<Map.Entry<T, Integer>> selected = new ArrayList<>();
+        while (maxCount <= 0 || selected.size() < maxCount) {
+            T task = bestTransfer(myTime, myCapacity, partnerTime, partnerCapacity, avgTime);
+            if (task == null) break;
+            int complexity = remove(task);
+            selected.add(Map.entry(task, complexity));
+            myTime -= (double) complexity / myCapacity;
+            partnerTime += (double) complexity / partnerCapacity;
+        }
+        return selected;
+    }
+}
@@ -0,0 +1,8 @@
+package Agents;
+
+/**
+ * A task handed to a computer: its agent name, complexity and the agent that owns it
+ * (the task itself, or the dispatcher that submitted it). An empty owner means the task owns itself.
+ */
+public record TaskTransfer(String name, int complexity, String owner) {
+}
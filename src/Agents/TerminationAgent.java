@@ -0,0 +1,94 @@
+package Agents;
+
+import Metrics.MeteredAgent;
+import Metrics.MetricsRegistry;
+import jade.lang.acl.ACLMessage;
+import jade.wrapper.ControllerException;
+
+/**
+ * Announces global quiescence: the moment no agent has anything left to do and no message
+ * is in flight. Agents hand their credit back here (see CreditAgent); quiescence is reached
+ * when every client has said how many agents it started and the credit returned equals
+ * the number of agents. Arguments: the agents started with the platform (computers and
+ * brokers) and the number of clients. With shutdownOnQuiescence the platform is shut
+ * down right away, so every agent takes down and flushes its results.
+ */
+public class TerminationAgent extends MeteredAgent {
+    private Credit expected = Credit.ZERO;
+    private Credit recovered = Credit.ZERO;
+    private int clients = 1;
+    private int reports = 0;
+    private boolean quiescent = false;
+    private long startedAt;
+
+    protected void setup() {
+        startedAt = System.nanoTime();
+        Object[] args = getArguments();
+        if (args != null && args.length > 0) expected = Credit.of(Long.parseLong((String) args[0]));
+        if (args != null && args.length > 1) clients = Integer.parseInt((String) args[1]);
+
+        registerMetrics();
+        addBehaviour(new MessageRouter(this)
+                .on(ACLMessage.INFORM, "Credit", this::onCredit)
+                .on(ACLMessage.INFORM, "Submitted", this::onSubmitted));
+
+        System.out.println("TerminationAgent " + getAID().getName() + " is ready. Expecting " + clients + " client(s).");
+    }
+
+    protected void takeDown() {
+        unregisterMetrics();
+        System.out.println("TerminationAgent " + getAID().getName() + " is terminated.");
+    }
+
+    private void onCredit(ACLMessage msg) {
+        Credit credit;
+        try {
+            credit = MessageCodec.getCredit(msg);
+        } catch (IllegalArgumentException e) {
+            System.err.println("TerminationAgent: " + e.getMessage() + ", dropped.");
+            return;
+        }
+        recovered = recovered.add(credit);
+        check();
+    }
+
+    private void onSubmitted(ACLMessage msg) {
+        long agents;
+        try {
+            agents = MessageCodec.getLong(msg);
+        } catch (IllegalArgumentException e) {
+            System.err.println("TerminationAgent: " + e.getMessage() + ", dropped.");
+            return;
+        }
+        if (agents < 0) {
+            System.err.println("TerminationAgent: negative agent count from " + msg.getSender() + ", dropped.");
+            return;
+        }
+        // A client's agents count only from its report on, so early returns cannot end the run too soon
+        expected = expected.add(Credit.of(agents));
+        reports++;
+        check();
+    }
+
+    private void check() {
+        boolean now = reports >= clients && recovered.equals(expected);
+        if (now && !quiescent) {
+            long millis = (System.nanoTime() - startedAt) / 1_000_000;
+            MetricsRegistry.get().quiescent(millis);
+            System.out.println("TerminationAgent: global quiescence after " + millis + " ms.");
+            if (Settings.getBoolean("shutdownOnQuiescence", false)) shutdown();
+        }
+        quiescent = now;
+    }
+
+    private void shutdown() {
+        // Killing the platform waits for every agent, this one included, so it cannot run on our thread
+        new Thread(() -> {
+            try {
+                getContainerController().getPlatformController().kill();
+            } catch (ControllerException e) {
+                e.printStackTrace();
+            }
+        }, "Shutdown").start();
+    }
+}
@@ -0,0 +1,40 @@
+package Agents;
+
+import jade.core.AID;
+
+/**
+ * What a computer does to execute one task. The engine works out how long the task may
+ * take on one worker of the computer; a workload either fills that time ("sleep", "cpu")
+ * or does its own work, in which case the real duration is what gets measured.
+ */
+public interface Workload {
+    void run(AID task, int complexity, long nanos) throws InterruptedException;
+
+    /**
+     * "sleep", "cpu" or the name of a class implementing Workload with a public no-argument constructor.
+     */
+    static Workload of(String name) {
+        switch (name) {
+            case "sleep":
+                return (task, complexity, nanos) -> Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+            case "cpu":
+                return (task, complexity, nanos) -> {
+                    // Synthetic burn: keeps one core busy for the whole time
+                    long deadline = System.nanoTime() + nanos;
+                    double x = complexity;
+                    while (System.nanoTime() < deadline) {
+                        for (int i = 0; i < 1000; i++) x = Math.sqrt(x + i);
+                        if (Thread.interrupted()) throw new InterruptedException();
+                    }
+                    // Uses the result so the loop is not optimized away
+                    if (Double.isNaN(x)) throw new IllegalStateException("Burn produced NaN");
+                };
+            default:
+                try {
+                    return (Workload) Class.forName(name).getDeclaredConstructor().newInstance();
+                } catch (ReflectiveOperationException | ClassCastException e) {
+                    throw new IllegalArgumentException("Unknown workload " + name, e);
+                }
+        }
+    }
+}
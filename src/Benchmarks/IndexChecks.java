@@ -0,0 +1,163 @@
+package Benchmarks;
+
+import Agents.LoadIndex;
+import Agents.TaskStore;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Brute-force comparison of the balancing indexes against plain scans. TaskStore's
+ * breakpoint lookups must find a task as good as the best one of a full scan, and
+ * LoadIndex's treap must agree with a sorted list on every rank, selection and count.
+ * Exits with status 1 on the first mismatch.
+ *
+ * Arguments are key=value pairs, for example: seed=1 rounds=2000
+ */
+public class IndexChecks {
+    private static final double EPS = 1e-9;
+
+    private final Random random;
+    private final int rounds;
+
+    public IndexChecks(Map<String, String> params) {
+        random = new Random(Long.parseLong(params.getOrDefault("seed", "1")));
+        rounds = Integer.parseInt(params.getOrDefault("rounds", "2000"));
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> params = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) params.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        IndexChecks checks = new IndexChecks(params);
+        try {
+            checks.bestTransfer();
+            checks.bestMakespanTransfer();
+            checks.loadIndex();
+        } catch (AssertionError e) {
+            System.out.println("FAILED: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private void bestTransfer() {
+        for (int round = 0; round < rounds; round++) {
+            TaskStore<Integer> store = randomStore();
+            int myCapacity = capacity();
+            int partnerCapacity = capacity();
+            double myTime = store.totalComplexity() / (double) myCapacity;
+            double partnerTime = myTime * 2 * random.nextDouble();
+            double avgTime = (myTime + partnerTime) / 2 + (random.nextDouble() - 0.5) * myTime / 4;
+
+            // Full scan: the largest reduction of the larger deviation from the average
+            double a = myTime - avgTime;
+            double b = partnerTime - avgTime;
+            double current = Math.max(Math.abs(a), Math.abs(b));
+            double best = 0;
+            for (Map.Entry<Integer, Integer> task : store) {
+                double x = task.getValue();
+                best = Math.max(best, current - Math.max(Math.abs(a - x / myCapacity), Math.abs(b + x / partnerCapacity)));
+            }
+
+            Integer found = store.bestTransfer(myTime, myCapacity, partnerTime, partnerCapacity, avgTime);
+            double improvement = 0;
+            if (found != null) {
+                double x = store.complexity(found);
+                improvement = current - Math.max(Math.abs(a - x / myCapacity), Math.abs(b + x / partnerCapacity));
+            }
+            check(best <= EPS ? found == null : Math.abs(best - improvement) <= EPS * Math.max(1, best),
+                    "bestTransfer round " + round + ": scan " + best + ", store " + improvement);
+        }
+        System.out.println("bestTransfer: " + rounds + " stores OK");
+    }
+
+    private void bestMakespanTransfer() {
+        for (int round = 0; round < rounds; round++) {
+            TaskStore<Integer> store = randomStore();
+            int myCapacity = capacity();
+            int partnerCapacity = capacity();
+            double myTime = store.totalComplexity() / (double) myCapacity;
+            double partnerTime = myTime * 2 * random.nextDouble();
+
+            // Full scan: the smallest later finish time that still beats myTime
+            double best = myTime;
+            for (Map.Entry<Integer, Integer> task : store) {
+                double x = task.getValue();
+                if (partnerTime < myTime)
+                    best = Math.min(best, Math.max(myTime - x / myCapacity, partnerTime + x / partnerCapacity));
+            }
+
+            Integer found = store.bestMakespanTransfer(myTime, myCapacity, partnerTime, partnerCapacity);
+            double finish = myTime;
+            if (found != null) {
+                double x = store.complexity(found);
+                finish = Math.max(myTime - x / myCapacity, partnerTime + x / partnerCapacity);
+            }
+            check(best >= myTime - EPS ? found == null : Math.abs(best - finish) <= EPS * Math.max(1, best),
+                    "bestMakespanTransfer round " + round + ": scan " + best + ", store " + finish);
+        }
+        System.out.println("bestMakespanTransfer: " + rounds + " stores OK");
+    }
+
+    private void loadIndex() {
+        LoadIndex<Integer> index = new LoadIndex<>(Integer::compare);
+        Map<Integer, Double> loads = new HashMap<>();
+        Comparator<Integer> order = Comparator.<Integer>comparingDouble(loads::get).thenComparing(Integer::compare);
+        int operations = rounds * 10;
+        for (int op = 0; op < operations; op++) {
+            // Few computers and coarse loads, so ties and repeated updates are frequent
+            int computer = random.nextInt(64);
+            if (random.nextInt(5) == 0) {
+                index.remove(computer);
+                loads.remove(computer);
+            } else {
+                double load = random.nextInt(20) * 0.5;
+                index.update(computer, load);
+                loads.put(computer, load);
+            }
+
+            List<Integer> sorted = new ArrayList<>(loads.keySet());
+            sorted.sort(order);
+            double sum = 0;
+            for (double load : loads.values()) sum += load;
+            check(index.size() == sorted.size(), "size after op " + op);
+            check(Math.abs(index.sum() - sum) <= EPS * Math.max(1, sum), "sum after op " + op);
+            for (int i = 0; i < sorted.size(); i++) {
+                check(index.rank(sorted.get(i)) == i, "rank of " + sorted.get(i) + " after op " + op);
+                check(sorted.get(i).equals(index.select(i)), "select(" + i + ") after op " + op);
+            }
+            check(index.select(sorted.size()) == null, "select past the end after op " + op);
+
+            double low = random.nextInt(20) * 0.5 - 0.25 * random.nextInt(2);
+            double high = low + random.nextInt(10) * 0.5;
+            int within = 0;
+            for (double load : loads.values()) if (load >= low && load <= high) within++;
+            check(index.countWithin(low, high) == within, "countWithin(" + low + ", " + high + ") after op " + op);
+        }
+        System.out.println("loadIndex: " + operations + " operations OK");
+    }
+
+    private TaskStore<Integer> randomStore() {
+        TaskStore<Integer> store = new TaskStore<>();
+        int size = 1 + random.nextInt(random.nextBoolean() ? 8 : 200);
+        // Narrow ranges give many equal complexities, wide ones spread the breakpoints
+        int range = random.nextBoolean() ? 50 : 40000;
+        for (int i = 0; i < size; i++) store.add(i, 1 + random.nextInt(range));
+        return store;
+    }
+
+    private int capacity() {
+        int[] capacities = {1000, 2000, 2500, 4000};
+        return capacities[random.nextInt(capacities.length)];
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
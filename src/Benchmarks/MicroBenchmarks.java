@@ -0,0 +1,236 @@
+package Benchmarks;
+
+import Agents.ComputerAgent;
+import Agents.LoadIndex;
+import Agents.MessageCodec;
+import Agents.TaskAgent;
+import Agents.TaskStore;
+import Agents.TaskTransfer;
+import jade.core.AID;
+import jade.lang.acl.ACLMessage;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.IntFunction;
+
+/**
+ * Throughput and allocation rate of the allocation and balancing hot paths,
+ * swept over task count and computer count. Each case is warmed up, then run
+ * for a fixed wall time on the current thread.
+ *
+ * Arguments are key=value pairs, for example:
+ * filter=bestTransfer maxTasks=1000000 maxComputers=10000 warmup=500 measure=1000
+ */
+public class MicroBenchmarks {
+    private static final int[] TASK_COUNTS = {100, 1_000, 10_000, 100_000, 1_000_000};
+    private static final int[] COMPUTER_COUNTS = {10, 100, 1_000, 10_000};
+    private static final int[] CAPACITIES = {1000, 2000, 2500, 4000};
+
+    private final String filter;
+    private final int maxTasks;
+    private final int maxComputers;
+    private final long warmupMillis;
+    private final long measureMillis;
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // Results are folded in here so the JIT cannot drop the measured work
+    private static volatile double sink;
+
+    // One benchmark case: prepared state plus the operation under test
+    private interface Operation {
+        double run();
+    }
+
+    public MicroBenchmarks(Map<String, String> params) {
+        filter = params.getOrDefault("filter", "");
+        maxTasks = Integer.parseInt(params.getOrDefault("maxTasks", "1000000"));
+        maxComputers = Integer.parseInt(params.getOrDefault("maxComputers", "10000"));
+        warmupMillis = Long.parseLong(params.getOrDefault("warmup", "500"));
+        measureMillis = Long.parseLong(params.getOrDefault("measure", "1000"));
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> params = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) params.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        new MicroBenchmarks(params).runAll();
+    }
+
+    public void runAll() {
+        System.out.printf("%-24s %10s %16s %14s%n", "Benchmark", "Size", "ops/s", "bytes/op");
+
+        // PairBalancingBehaviour: best task to give and the greedy transfer list
+        sweepTasks("bestTransfer", this::bestTransfer);
+        sweepTasks("pollTransfers", this::pollTransfers);
+        // startPairBalancing: Computer-info update, average, stop criterion, own rank and partner
+        sweepComputers("pairSelection", this::pairSelection);
+        // ProposeSendBehaviour: decode the batch CFP, compute finish times, encode the PROPOSE
+        sweepTasks("batchProposal", this::batchProposal);
+        // TaskAgent: choosing the best of the collected proposals
+        sweepComputers("bestProposal", this::bestProposal);
+        // Message content
+        sweepTasks("codecInts", this::codecInts);
+        sweepTasks("codecDoubles", this::codecDoubles);
+        sweepTasks("codecTransfers", this::codecTransfers);
+    }
+
+    private void sweepTasks(String name, IntFunction<Operation> setup) {
+        for (int n : TASK_COUNTS) if (n <= maxTasks) measure(name, n, setup);
+    }
+
+    private void sweepComputers(String name, IntFunction<Operation> setup) {
+        for (int m : COMPUTER_COUNTS) if (m <= maxComputers) measure(name, m, setup);
+    }
+
+    private void measure(String name, int size, IntFunction<Operation> setup) {
+        if (!name.contains(filter)) return;
+        Operation operation = setup.apply(size);
+        loop(operation, warmupMillis);
+
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        long ops = loop(operation, measureMillis);
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        System.out.printf("%-24s %10d %16.1f %14.1f%n", name, size, ops * 1e9 / elapsed, (double) allocated / ops);
+    }
+
+    private static long loop(Operation operation, long millis) {
+        long deadline = System.nanoTime() + millis * 1_000_000;
+        long ops = 0;
+        double acc = 0;
+        // The clock is read every 16 calls so it does not dominate sub-microsecond operations
+        do {
+            for (int i = 0; i < 16; i++) acc += operation.run();
+            ops += 16;
+        } while (System.nanoTime() < deadline);
+        sink = acc;
+        return ops;
+    }
+
+    private static int[] complexities(int n, Random random) {
+        int[] values = new int[n];
+        for (int i = 0; i < n; i++) values[i] = 1000 + random.nextInt(39001);
+        return values;
+    }
+
+    private static TaskStore<Integer> store(int[] complexities) {
+        TaskStore<Integer> store = new TaskStore<>();
+        for (int i = 0; i < complexities.length; i++) store.add(i, complexities[i]);
+        return store;
+    }
+
+    private Operation bestTransfer(int n) {
+        Random random = new Random(1);
+        TaskStore<Integer> store = store(complexities(n, random));
+        double myTime = store.totalComplexity() / 2000.0;
+        double[] partnerTimes = new double[1024];
+        for (int i = 0; i < partnerTimes.length; i++) partnerTimes[i] = myTime * random.nextDouble();
+        int[] step = {0};
+        return () -> {
+            double partnerTime = partnerTimes[step[0]++ & 1023];
+            Integer task = store.bestTransfer(myTime, 2000, partnerTime, 1000, (myTime + partnerTime) / 2);
+            return task == null ? 0 : task;
+        };
+    }
+
+    private Operation pollTransfers(int n) {
+        Random random = new Random(2);
+        TaskStore<Integer> store = store(complexities(n, random));
+        double myTime = store.totalComplexity() / 2000.0;
+        // The polled tasks are put back so every call sees the same store
+        return () -> {
+            double partnerTime = myTime * 0.9;
+            List<Map.Entry<Integer, Integer>> transfers =
+                    store.pollTransfers(myTime, 2000, partnerTime, 1000, (myTime + partnerTime) / 2, 64);
+            for (Map.Entry<Integer, Integer> transfer : transfers) store.add(transfer.getKey(), transfer.getValue());
+            return transfers.size();
+        };
+    }
+
+    private Operation pairSelection(int m) {
+        Random random = new Random(3);
+        List<AID> computers = new ArrayList<>();
+        LoadIndex<AID> index = new LoadIndex<>(AID::compareTo);
+        for (int c = 0; c < m; c++) {
+            AID computer = new AID("Computer" + c + "@bench", AID.ISGUID);
+            computers.add(computer);
+            index.update(computer, 1000 * random.nextDouble());
+        }
+        double[] loads = new double[1024];
+        for (int i = 0; i < loads.length; i++) loads[i] = 1000 * random.nextDouble();
+        int[] step = {0};
+        return () -> {
+            int i = step[0]++;
+            AID me = computers.get(i % m);
+            index.update(me, loads[i & 1023]);
+            double avgTime = index.average();
+            int withinDelta = index.countWithin(avgTime - 2, avgTime + 2);
+            int myIndex = index.rank(me);
+            AID partner = index.select(index.size() - 1 - myIndex);
+            return withinDelta + myIndex + (partner == me ? 1 : 0);
+        };
+    }
+
+    private Operation batchProposal(int n) {
+        ACLMessage cfp = new ACLMessage(ACLMessage.CFP);
+        cfp.setOntology("Batch");
+        MessageCodec.putInts(cfp, complexities(n, new Random(4)));
+        return () -> {
+            ACLMessage propose = new ACLMessage(ACLMessage.PROPOSE);
+            double[] times = ComputerAgent.proposalTimes(123.4, 2500, MessageCodec.getInts(cfp));
+            MessageCodec.putDoubles(propose, times);
+            return propose.getByteSequenceContent().length;
+        };
+    }
+
+    private Operation bestProposal(int m) {
+        Random random = new Random(5);
+        Map<AID, Double> proposals = new HashMap<>();
+        for (int c = 0; c < m; c++) {
+            double time = 1000 * random.nextDouble();
+            proposals.put(new AID("Computer" + c + "@bench", AID.ISGUID), time);
+        }
+        return () -> TaskAgent.bestProposal(proposals).hashCode();
+    }
+
+    private Operation codecInts(int n) {
+        int[] values = complexities(n, new Random(6));
+        return () -> {
+            ACLMessage msg = new ACLMessage(ACLMessage.CFP);
+            MessageCodec.putInts(msg, values);
+            return MessageCodec.getInts(msg).length;
+        };
+    }
+
+    private Operation codecDoubles(int n) {
+        Random random = new Random(7);
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) values[i] = 1000 * random.nextDouble();
+        return () -> {
+            ACLMessage msg = new ACLMessage(ACLMessage.PROPOSE);
+            MessageCodec.putDoubles(msg, values);
+            return MessageCodec.getDoubles(msg).length;
+        };
+    }
+
+    private Operation codecTransfers(int n) {
+        int[] values = complexities(n, new Random(8));
+        List<TaskTransfer> transfers = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) transfers.add(new TaskTransfer("Task" + i + "@bench", values[i], "Dispatcher@bench"));
+        return () -> {
+            ACLMessage msg = new ACLMessage(ACLMessage.ACCEPT_PROPOSAL);
+            MessageCodec.putTransfers(msg, transfers);
+            return MessageCodec.getTransfers(msg).size();
+        };
+    }
+}
@@ -0,0 +1,100 @@
+package Benchmarks;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Synthetic workloads for benchmark runs. Everything is drawn from one seeded Random,
+ * so the same parameters always give the same tasks and computers.
+ *
+ * Parameters (key=value): complexity=uniform|zipf|pareto, minComplexity=1000,
+ * maxComplexity=40000, shape (Zipf exponent, default 1.0, or Pareto alpha, default 1.5),
+ * capacities=1000,2000,2500,4000 (each computer draws one; a single value makes them equal).
+ */
+public final class TaskGenerator {
+    // Distinct Zipf ranks; rank k gets complexity maxComplexity / k
+    private static final int ZIPF_RANKS = 1000;
+
+    private final String distribution;
+    private final int minComplexity;
+    private final int maxComplexity;
+    private final double shape;
+    private final int[] capacityMix;
+    private final Random random;
+    private double[] zipfCdf;
+
+    public TaskGenerator(Map<String, String> params, long seed) {
+        distribution = params.getOrDefault("complexity", "uniform");
+        minComplexity = Integer.parseInt(params.getOrDefault("minComplexity", "1000"));
+        maxComplexity = Integer.parseInt(params.getOrDefault("maxComplexity", "40000"));
+        shape = Double.parseDouble(params.getOrDefault("shape", distribution.equals("pareto") ? "1.5" : "1.0"));
+        capacityMix = Arrays.stream(params.getOrDefault("capacities", "1000,2000,2500,4000").split(","))
+                .mapToInt(Integer::parseInt).toArray();
+        random = new Random(seed);
+    }
+
+    public int[] capacities(int count) {
+        int[] capacities = new int[count];
+        for (int c = 0; c < count; c++) capacities[c] = capacityMix[random.nextInt(capacityMix.length)];
+        return capacities;
+    }
+
+    public int[] complexities(int count) {
+        int[] complexities = new int[count];
+        for (int t = 0; t < count; t++) complexities[t] = nextComplexity();
+        return complexities;
+    }
+
+    private int nextComplexity() {
+        switch (distribution) {
+            case "uniform":
+                return minComplexity + random.nextInt(maxComplexity - minComplexity + 1);
+            case "zipf": {
+                // Few large tasks, many small ones
+                int rank = Arrays.binarySearch(zipfCdf(), random.nextDouble());
+                rank = (rank < 0 ? -rank - 1 : rank) + 1;
+                return Math.max(minComplexity, maxComplexity / rank);
+            }
+            case "pareto": {
+                // Heavy tail above minComplexity, cut at maxComplexity
+                double value = minComplexity / Math.pow(1 - random.nextDouble(), 1 / shape);
+                return (int) Math.min(maxComplexity, value);
+            }
+            default:
+                throw new IllegalArgumentException("Unknown complexity distribution " + distribution);
+        }
+    }
+
+    private double[] zipfCdf() {
+        if (zipfCdf == null) {
+            zipfCdf = new double[ZIPF_RANKS];
+            double sum = 0;
+            for (int k = 1; k <= ZIPF_RANKS; k++) {
+                sum += 1 / Math.pow(k, shape);
+                zipfCdf[k - 1] = sum;
+            }
+            for (int k = 0; k < ZIPF_RANKS; k++) zipfCdf[k] /= sum;
+        }
+        return zipfCdf;
+    }
+
+    /**
+     * Makespan no assignment can beat: the perfectly shared total, or the largest task alone on the fastest computer.
+     */
+    public static double lowerBound(int[] complexities, int[] capacities) {
+        long work = 0;
+        int largest = 0;
+        for (int complexity : complexities) {
+            work += complexity;
+            largest = Math.max(largest, complexity);
+        }
+        long capacity = 0;
+        int fastest = 0;
+        for (int c : capacities) {
+            capacity += c;
+            fastest = Math.max(fastest, c);
+        }
+        return Math.max((double) work / capacity, (double) largest / fastest);
+    }
+}
@@ -1,5 +1,7 @@
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import Agents.ArrivalSchedule;
+import Agents.Settings;
+import Agents.TaskPoolAgent;
+import Agents.TaskSource;
 import jade.core.Profile;
 import jade.core.ProfileImpl;
 import jade.core.Runtime;
@@ -7,41 +9,111 @@ import jade.wrapper.AgentContainer;
 import jade.wrapper.AgentController;
 import jade.wrapper.ControllerException;
 
-import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.List;
 
 public class Client {
     public static void main(String[] args) throws InterruptedException {
         Runtime rt = Runtime.instance();
 
         Profile p = new ProfileImpl();
-        p.setParameter(Profile.MAIN_HOST, "172.20.10.3");
-        p.setParameter(Profile.MAIN_PORT, "1099");
+        p.setParameter(Profile.MAIN_HOST, Settings.getString("mainHost", "172.20.10.3"));
+        p.setParameter(Profile.MAIN_PORT, String.valueOf(Settings.getInt("mainPort", 1099)));
         AgentContainer agentContainer = rt.createAgentContainer(p);
 
         // Thread.sleep(5000);
         try {
-            String containerName = agentContainer.getContainerName();
-            String prefix = generatePrefix(containerName);
+            // Tasks are read one at a time and submitted on an open-loop schedule, so memory does not grow with the source
+            try (TaskSource tasks = TaskSource.open()) {
+                submit(agentContainer, tasks);
+            }
+        } catch (IOException | ControllerException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Submits the tasks from this container in the mode the settings select; returns once the last one is handed over.
+     */
+    static void submit(AgentContainer agentContainer, Iterator<TaskSource.Task> tasks)
+            throws ControllerException, InterruptedException {
+        String containerName = agentContainer.getContainerName();
+        String prefix = generatePrefix(containerName);
+
+        ArrivalSchedule arrivals = new ArrivalSchedule(
+                Settings.getDouble("submitRate", 0),
+                Settings.getString("arrivals", "uniform").equals("poisson"));
+
+        if (Settings.getBoolean("batch", false)) {
+            // One dispatcher per batch of batchSize tasks; 0 keeps the whole source in one batch
+            int batchSize = Settings.getInt("batchSize", 0);
+            boolean scheduler = Settings.getBoolean("scheduler", false);
+            List<Object> batch = new ArrayList<>();
+            int batches = 0;
+            while (tasks.hasNext()) {
+                TaskSource.Task task = tasks.next();
+                arrivals.await();
+                batch.add(prefix + task.name());
+                batch.add(String.valueOf(task.complexity()));
+                if (batchSize > 0 && batch.size() == 2 * batchSize) {
+                    startBatch(agentContainer, prefix, scheduler, ++batches, batch);
+                    batch = new ArrayList<>();
+                }
+            }
+            if (!batch.isEmpty() || batches == 0)
+                startBatch(agentContainer, prefix, scheduler, batchSize > 0 ? ++batches : 0, batch);
+            announce(agentContainer, prefix, Math.max(batches, 1));
+            return;
+        }
 
-            JsonNode tasks = new ObjectMapper().readTree(new File("src/Files/tasks.json"));
-            Iterator<Map.Entry<String, JsonNode>> t = tasks.fields();
+        // In pool mode one agent holds every task of the container as data
+        TaskPoolAgent.Feed pool = null;
+        if (Settings.getBoolean("taskPool", false)) {
+            AgentController agent = agentContainer.createNewAgent(prefix + "TaskPool", "Agents.TaskPoolAgent", new Object[0]);
+            agent.start();
+            pool = agent.getO2AInterface(TaskPoolAgent.Feed.class);
+        }
 
-            while (t.hasNext()) {
-                Map.Entry<String, JsonNode> task = t.next();
-                String taskName = prefix + task.getKey();
+        long submitted = 0;
+        while (tasks.hasNext()) {
+            TaskSource.Task task = tasks.next();
+            arrivals.await();
+            // Pooled tasks keep the agent names they would have had in per-task mode
+            if (pool != null) pool.put(new TaskSource.Task(prefix + task.name(), task.complexity()));
+            else {
                 AgentController agent = agentContainer.createNewAgent(
-                        taskName,
+                        prefix + task.name(),
                         "Agents.TaskAgent",
-                        new Object[]{task.getValue().path("complexity").asText()}
+                        new Object[]{String.valueOf(task.complexity())}
                 );
                 agent.start();
             }
-        } catch (IOException | ControllerException e) {
-            throw new RuntimeException(e);
+            if (++submitted % 10000 == 0)
+                System.out.println("Client submitted " + submitted + " tasks, behind schedule by " + arrivals.lagMillis() + " ms.");
         }
+        if (pool != null) pool.put(TaskPoolAgent.END_OF_TASKS);
+        announce(agentContainer, prefix, pool != null ? 1 : submitted);
+    }
+
+    private static void announce(AgentContainer container, String prefix, long agents) throws ControllerException {
+        // Termination detection waits for every client to say how many agents it has started
+        if (!Settings.getBoolean("terminationDetection", false)) return;
+        container.createNewAgent(prefix + "Submitted", "Agents.SubmissionAgent",
+                new Object[]{String.valueOf(agents)}).start();
+    }
+
+    private static void startBatch(AgentContainer container, String prefix, boolean scheduler, int number,
+                                   List<Object> batch) throws ControllerException {
+        // The scheduler computes the whole assignment at once instead of greedily
+        String name = prefix + (scheduler ? "Scheduler" : "Dispatcher") + (number > 0 ? String.valueOf(number) : "");
+        AgentController agent = container.createNewAgent(
+                name,
+                scheduler ? "Agents.SchedulerAgent" : "Agents.DispatcherAgent",
+                batch.toArray()
+        );
+        agent.start();
     }
 
     private static String generatePrefix(String containerName) {
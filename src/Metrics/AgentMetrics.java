@@ -0,0 +1,90 @@
+package Metrics;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.lang.acl.ACLMessage;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Traffic of one agent. Outgoing messages are counted by MeteredAgent.transmit, incoming
+ * ones by MeteredQueue as they are delivered, which may happen on the sender's thread.
+ * CFP and PROPOSE send times are kept until the matching reply arrives to measure latency.
+ */
+public final class AgentMetrics implements AgentMetricsMBean {
+    private final Agent agent;
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final Map<String, Long> cfpSentAt = new ConcurrentHashMap<>();
+    private final Map<AID, Long> proposeSentAt = new ConcurrentHashMap<>();
+    private volatile DoubleSupplier totalTime;
+
+    public AgentMetrics(Agent agent) {
+        this.agent = agent;
+    }
+
+    public void trackTotalTime(DoubleSupplier totalTime) {
+        this.totalTime = totalTime;
+    }
+
+    boolean hasTotalTime() {
+        return totalTime != null;
+    }
+
+    void sent(ACLMessage msg) {
+        int receivers = 0;
+        for (Iterator<?> it = msg.getAllReceiver(); it.hasNext(); it.next()) receivers++;
+        sent.add(receivers);
+        MetricsRegistry.get().countSent(msg, receivers);
+
+        long now = System.nanoTime();
+        if (msg.getPerformative() == ACLMessage.CFP && msg.getReplyWith() != null) {
+            // Only the latest call for proposals of this agent is outstanding
+            cfpSentAt.clear();
+            cfpSentAt.put(msg.getReplyWith(), now);
+        } else if (msg.getPerformative() == ACLMessage.PROPOSE) {
+            for (Iterator<?> it = msg.getAllReceiver(); it.hasNext(); ) proposeSentAt.put((AID) it.next(), now);
+        }
+    }
+
+    void received(ACLMessage msg) {
+        received.increment();
+        MetricsRegistry registry = MetricsRegistry.get();
+        registry.countReceived(msg);
+
+        int performative = msg.getPerformative();
+        if (performative == ACLMessage.PROPOSE && msg.getInReplyTo() != null) {
+            Long start = cfpSentAt.get(msg.getInReplyTo());
+            if (start != null) registry.cfpToPropose((System.nanoTime() - start) / 1000);
+        } else if (performative == ACLMessage.ACCEPT_PROPOSAL || performative == ACLMessage.REJECT_PROPOSAL) {
+            Long start = msg.getSender() == null ? null : proposeSentAt.remove(msg.getSender());
+            if (start != null && performative == ACLMessage.ACCEPT_PROPOSAL)
+                registry.proposeToAccept((System.nanoTime() - start) / 1000);
+        }
+    }
+
+    public String getName() {
+        return agent.getName();
+    }
+
+    public int getMailboxDepth() {
+        return agent.getCurQueueSize();
+    }
+
+    public long getMessagesSent() {
+        return sent.sum();
+    }
+
+    public long getMessagesReceived() {
+        return received.sum();
+    }
+
+    public double getTotalTime() {
+        DoubleSupplier supplier = totalTime;
+        return supplier == null ? Double.NaN : supplier.getAsDouble();
+    }
+}
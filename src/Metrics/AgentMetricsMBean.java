@@ -0,0 +1,16 @@
+package Metrics;
+
+/**
+ * Per-agent view: mailbox, traffic and, for computers, the current total time.
+ */
+public interface AgentMetricsMBean {
+    String getName();
+
+    int getMailboxDepth();
+
+    long getMessagesSent();
+
+    long getMessagesReceived();
+
+    double getTotalTime();
+}
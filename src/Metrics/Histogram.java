@@ -0,0 +1,55 @@
+package Metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram with power-of-two buckets. Recording is a few striped
+ * increments, so agents on different threads never contend on one counter.
+ * Percentiles are reported as the upper bound of the bucket they fall into.
+ */
+public final class Histogram {
+    private static final int BUCKETS = 65;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+    public Histogram() {
+        for (int i = 0; i < BUCKETS; i++) buckets[i] = new LongAdder();
+    }
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        buckets[64 - Long.numberOfLeadingZeros(value)].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public double mean() {
+        long n = count.sum();
+        return n == 0 ? 0.0 : (double) sum.sum() / n;
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public long percentile(double q) {
+        long n = count.sum();
+        if (n == 0) return 0;
+        long target = (long) Math.ceil(q * n);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += buckets[b].sum();
+            if (seen >= target) return b == 0 ? 0 : Math.min(max.get(), b == 64 ? Long.MAX_VALUE : (1L << b) - 1);
+        }
+        return max.get();
+    }
+}
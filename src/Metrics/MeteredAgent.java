@@ -0,0 +1,50 @@
+package Metrics;
+
+import jade.core.Agent;
+import jade.core.MessageQueue;
+import jade.lang.acl.ACLMessage;
+
+/**
+ * Agent whose traffic is recorded in the MetricsRegistry. Incoming messages are counted
+ * by the mailbox itself; outgoing ones must go through transmit, since send is final.
+ */
+public abstract class MeteredAgent extends Agent {
+    private final AgentMetrics metrics = new AgentMetrics(this);
+    private MeteredQueue mailbox;
+
+    protected MessageQueue createMessageQueue() {
+        mailbox = new MeteredQueue(metrics, this::delivered);
+        return mailbox;
+    }
+
+    /**
+     * Called for every message as it is put into the mailbox, on the sender's thread and
+     * holding the mailbox lock.
+     */
+    protected void delivered(ACLMessage msg) {
+    }
+
+    protected void transmit(ACLMessage msg) {
+        metrics.sent(msg);
+        send(msg);
+    }
+
+    /**
+     * Lock under which messages are put into the mailbox; holding it keeps new ones out.
+     */
+    protected Object mailboxLock() {
+        return mailbox;
+    }
+
+    protected AgentMetrics metrics() {
+        return metrics;
+    }
+
+    protected void registerMetrics() {
+        MetricsRegistry.get().register(getLocalName(), metrics);
+    }
+
+    protected void unregisterMetrics() {
+        MetricsRegistry.get().unregister(getLocalName());
+    }
+}
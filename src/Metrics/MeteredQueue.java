@@ -0,0 +1,87 @@
+package Metrics;
+
+import jade.core.MessageQueue;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Agent mailbox that counts every message as it is delivered. Behaves like the default
+ * JADE queue: unbounded unless a maximum size is set, in which case the oldest message
+ * is dropped. Messages put back with addFirst were already counted. The delivery callback
+ * runs on the sender's thread, holding the queue's lock, before the message becomes
+ * visible to the agent.
+ */
+public final class MeteredQueue implements MessageQueue {
+    private final LinkedList<ACLMessage> messages = new LinkedList<>();
+    private final AgentMetrics metrics;
+    private final Consumer<ACLMessage> delivered;
+    private int maxSize = 0;
+
+    public MeteredQueue(AgentMetrics metrics, Consumer<ACLMessage> delivered) {
+        this.metrics = metrics;
+        this.delivered = delivered;
+    }
+
+    public synchronized void addFirst(ACLMessage msg) {
+        messages.addFirst(msg);
+    }
+
+    public void addLast(ACLMessage msg) {
+        metrics.received(msg);
+        synchronized (this) {
+            delivered.accept(msg);
+            if (maxSize > 0 && messages.size() >= maxSize) messages.removeFirst();
+            messages.addLast(msg);
+        }
+    }
+
+    public synchronized int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized void setMaxSize(int newSize) {
+        if (newSize < 0) throw new IllegalArgumentException("Invalid MsgQueue size");
+        maxSize = newSize;
+    }
+
+    public synchronized boolean isEmpty() {
+        return messages.isEmpty();
+    }
+
+    public synchronized ACLMessage receive(MessageTemplate pattern) {
+        for (Iterator<ACLMessage> it = messages.iterator(); it.hasNext(); ) {
+            ACLMessage msg = it.next();
+            if (pattern == null || pattern.match(msg)) {
+                it.remove();
+                return msg;
+            }
+        }
+        return null;
+    }
+
+    public synchronized List<ACLMessage> receive(MessageTemplate pattern, int max) {
+        List<ACLMessage> result = new ArrayList<>();
+        for (Iterator<ACLMessage> it = messages.iterator(); it.hasNext() && result.size() < max; ) {
+            ACLMessage msg = it.next();
+            if (pattern == null || pattern.match(msg)) {
+                it.remove();
+                result.add(msg);
+            }
+        }
+        return result.isEmpty() ? null : result;
+    }
+
+    public synchronized void copyTo(jade.util.leap.List list) {
+        for (ACLMessage msg : messages) list.add(msg);
+    }
+
+    public synchronized int size() {
+        return messages.size();
+    }
+}
@@ -0,0 +1,348 @@
+package Metrics;
+
+import Agents.Settings;
+import jade.lang.acl.ACLMessage;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of every agent in this JVM, published as the "Agents:type=Metrics" MBean
+ * with one "Agents:type=Agent" MBean per registered agent. Counters are striped
+ * and keyed by ontology and performative index, so recording a message allocates nothing.
+ */
+public final class MetricsRegistry implements MetricsRegistryMBean {
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+    private static final String[] PERFORMATIVES = ACLMessage.getAllPerformativeNames();
+    private static final String NO_ONTOLOGY = "-";
+
+    private final Map<String, LongAdder[]> sentByOntology = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder[]> receivedByOntology = new ConcurrentHashMap<>();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final Histogram cfpToPropose = new Histogram();
+    private final Histogram proposeToAccept = new Histogram();
+    private final Histogram convergence = new Histogram();
+    private final Histogram allocation = new Histogram();
+    private final LongAdder placed = new LongAdder();
+    private final LongAdder placedLocally = new LongAdder();
+    private final LongAdder balancingRounds = new LongAdder();
+    private final LongAdder transfers = new LongAdder();
+    private final LongAdder directoryQueries = new LongAdder();
+    private final LongAdder directoryHits = new LongAdder();
+    private final Histogram execution = new Histogram();
+    private final LongAdder stolen = new LongAdder();
+    private final Histogram quiescence = new Histogram();
+    private final Map<String, AgentMetrics> agents = new ConcurrentHashMap<>();
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    private MetricsReporter reporter;
+
+    private MetricsRegistry() {
+        try {
+            server.registerMBean(this, new ObjectName("Agents:type=Metrics"));
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static MetricsRegistry get() {
+        return INSTANCE;
+    }
+
+    public void register(String localName, AgentMetrics metrics) {
+        agents.put(localName, metrics);
+        try {
+            server.registerMBean(metrics, agentName(localName));
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+        startReporter();
+    }
+
+    public void unregister(String localName) {
+        if (agents.remove(localName) == null) return;
+        try {
+            server.unregisterMBean(agentName(localName));
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static ObjectName agentName(String localName) throws JMException {
+        return new ObjectName("Agents:type=Agent,name=" + ObjectName.quote(localName));
+    }
+
+    private synchronized void startReporter() {
+        long interval = Settings.getLong("metricsInterval", 0);
+        if (reporter != null || interval <= 0) return;
+        reporter = new MetricsReporter(this, Settings.getString("metricsFile", "src/Files/metrics.csv"), interval);
+        reporter.start();
+    }
+
+    void countSent(ACLMessage msg, int receivers) {
+        counters(sentByOntology, msg.getOntology())[index(msg)].add(receivers);
+        sent.add(receivers);
+    }
+
+    void countReceived(ACLMessage msg) {
+        counters(receivedByOntology, msg.getOntology())[index(msg)].increment();
+        received.increment();
+    }
+
+    private static LongAdder[] counters(Map<String, LongAdder[]> byOntology, String ontology) {
+        if (ontology == null) ontology = NO_ONTOLOGY;
+        LongAdder[] counters = byOntology.get(ontology);
+        if (counters != null) return counters;
+        return byOntology.computeIfAbsent(ontology, k -> {
+            LongAdder[] created = new LongAdder[PERFORMATIVES.length + 1];
+            for (int i = 0; i < created.length; i++) created[i] = new LongAdder();
+            return created;
+        });
+    }
+
+    // Unknown performatives share the last slot
+    private static int index(ACLMessage msg) {
+        int performative = msg.getPerformative();
+        return performative >= 0 && performative < PERFORMATIVES.length ? performative : PERFORMATIVES.length;
+    }
+
+    void cfpToPropose(long micros) {
+        cfpToPropose.record(micros);
+    }
+
+    void proposeToAccept(long micros) {
+        proposeToAccept.record(micros);
+    }
+
+    public void allocated(long micros) {
+        allocation.record(micros);
+    }
+
+    public void placed(int count) {
+        placed.add(count);
+    }
+
+    public void placedLocally(int count) {
+        placedLocally.add(count);
+    }
+
+    public void balancingRound() {
+        balancingRounds.increment();
+    }
+
+    public void transfers(int count) {
+        transfers.add(count);
+    }
+
+    public void converged(long millis) {
+        convergence.record(millis);
+    }
+
+    public void directoryQuery() {
+        directoryQueries.increment();
+    }
+
+    public void directoryHit() {
+        directoryHits.increment();
+    }
+
+    public void executed(long micros) {
+        execution.record(micros);
+    }
+
+    public void stolen(int count) {
+        stolen.add(count);
+    }
+
+    public void quiescent(long millis) {
+        quiescence.record(millis);
+    }
+
+    /**
+     * Current values of every metric, in a stable order, for the periodic dump.
+     */
+    public Map<String, Number> snapshot() {
+        Map<String, Number> values = new LinkedHashMap<>();
+        values.put("messages.sent", getMessagesSent());
+        values.put("messages.received", getMessagesReceived());
+        putCounts(values, "sent", sentByOntology);
+        putCounts(values, "received", receivedByOntology);
+        values.put("latency.cfp_propose.count", cfpToPropose.count());
+        values.put("latency.cfp_propose.mean_us", getCfpToProposeMeanMicros());
+        values.put("latency.cfp_propose.p99_us", getCfpToProposeP99Micros());
+        values.put("latency.propose_accept.count", proposeToAccept.count());
+        values.put("latency.propose_accept.mean_us", getProposeToAcceptMeanMicros());
+        values.put("latency.propose_accept.p99_us", getProposeToAcceptP99Micros());
+        values.put("latency.allocation.count", allocation.count());
+        values.put("latency.allocation.mean_us", getAllocationMeanMicros());
+        values.put("latency.allocation.p99_us", getAllocationP99Micros());
+        values.put("allocation.placed", getPlacedTasks());
+        values.put("allocation.local", getLocalPlacements());
+        values.put("balancing.rounds", getBalancingRounds());
+        values.put("balancing.transfers", getTransfers());
+        values.put("balancing.convergence.mean_ms", getConvergenceMeanMillis());
+        values.put("balancing.convergence.max_ms", getConvergenceMaxMillis());
+        values.put("directory.queries", getDirectoryQueries());
+        values.put("directory.hits", getDirectoryHits());
+        values.put("execution.count", getExecutedTasks());
+        values.put("execution.mean_us", getExecutionMeanMicros());
+        values.put("execution.stolen", getStolenTasks());
+        values.put("termination.quiescence.count", getQuiescenceCount());
+        values.put("termination.quiescence.max_ms", getQuiescenceMaxMillis());
+        values.put("mailbox.max_depth", getMaxMailboxDepth());
+        values.put("total_time.min", getTotalTimeMin());
+        values.put("total_time.max", getTotalTimeMax());
+        values.put("total_time.deviation", getTotalTimeDeviation());
+        return values;
+    }
+
+    private static void putCounts(Map<String, Number> values, String direction, Map<String, LongAdder[]> byOntology) {
+        for (Map.Entry<String, LongAdder[]> entry : new TreeMap<>(byOntology).entrySet()) {
+            LongAdder[] counters = entry.getValue();
+            for (int i = 0; i < counters.length; i++) {
+                long count = counters[i].sum();
+                if (count == 0) continue;
+                String performative = i < PERFORMATIVES.length ? PERFORMATIVES[i] : "UNKNOWN";
+                values.put(direction + "." + performative + "." + entry.getKey(), count);
+            }
+        }
+    }
+
+    public long getMessagesSent() {
+        return sent.sum();
+    }
+
+    public long getMessagesReceived() {
+        return received.sum();
+    }
+
+    public String[] getMessageCounts() {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, Number> entry : snapshot().entrySet()) {
+            String key = entry.getKey();
+            if (key.startsWith("sent.") || key.startsWith("received."))
+                lines.add(key.replace('.', ' ') + " " + entry.getValue());
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    public double getCfpToProposeMeanMicros() {
+        return cfpToPropose.mean();
+    }
+
+    public long getCfpToProposeP99Micros() {
+        return cfpToPropose.percentile(0.99);
+    }
+
+    public double getProposeToAcceptMeanMicros() {
+        return proposeToAccept.mean();
+    }
+
+    public long getProposeToAcceptP99Micros() {
+        return proposeToAccept.percentile(0.99);
+    }
+
+    public double getAllocationMeanMicros() {
+        return allocation.mean();
+    }
+
+    public long getAllocationP99Micros() {
+        return allocation.percentile(0.99);
+    }
+
+    public long getPlacedTasks() {
+        return placed.sum();
+    }
+
+    public long getLocalPlacements() {
+        return placedLocally.sum();
+    }
+
+    public long getBalancingRounds() {
+        return balancingRounds.sum();
+    }
+
+    public long getTransfers() {
+        return transfers.sum();
+    }
+
+    public double getConvergenceMeanMillis() {
+        return convergence.mean();
+    }
+
+    public long getConvergenceMaxMillis() {
+        return convergence.max();
+    }
+
+    public long getDirectoryQueries() {
+        return directoryQueries.sum();
+    }
+
+    public long getExecutedTasks() {
+        return execution.count();
+    }
+
+    public double getExecutionMeanMicros() {
+        return execution.mean();
+    }
+
+    public long getStolenTasks() {
+        return stolen.sum();
+    }
+
+    public long getQuiescenceCount() {
+        return quiescence.count();
+    }
+
+    public long getQuiescenceMaxMillis() {
+        return quiescence.max();
+    }
+
+    public long getDirectoryHits() {
+        return directoryHits.sum();
+    }
+
+    public int getMaxMailboxDepth() {
+        int max = 0;
+        for (AgentMetrics metrics : agents.values()) max = Math.max(max, metrics.getMailboxDepth());
+        return max;
+    }
+
+    public double getTotalTimeMin() {
+        return totalTimeSpread()[0];
+    }
+
+    public double getTotalTimeMax() {
+        return totalTimeSpread()[1];
+    }
+
+    public double getTotalTimeDeviation() {
+        return totalTimeSpread()[2];
+    }
+
+    // Min, max and standard deviation over the computers registered in this JVM
+    private double[] totalTimeSpread() {
+        double min = Double.NaN, max = Double.NaN, sum = 0, sumSquares = 0;
+        int n = 0;
+        for (AgentMetrics metrics : agents.values()) {
+            if (!metrics.hasTotalTime()) continue;
+            double time = metrics.getTotalTime();
+            min = n == 0 ? time : Math.min(min, time);
+            max = n == 0 ? time : Math.max(max, time);
+            sum += time;
+            sumSquares += time * time;
+            n++;
+        }
+        double deviation = n == 0 ? Double.NaN : Math.sqrt(Math.max(0.0, sumSquares / n - (sum / n) * (sum / n)));
+        return new double[]{min, max, deviation};
+    }
+}
@@ -0,0 +1,79 @@
+package Metrics;
+
+/**
+ * Platform-wide view of the agents running in this JVM.
+ */
+public interface MetricsRegistryMBean {
+    long getMessagesSent();
+
+    long getMessagesReceived();
+
+    /**
+     * One line per direction, performative and ontology, e.g. "sent PROPOSE Batch 12".
+     */
+    String[] getMessageCounts();
+
+    double getCfpToProposeMeanMicros();
+
+    long getCfpToProposeP99Micros();
+
+    double getProposeToAcceptMeanMicros();
+
+    long getProposeToAcceptP99Micros();
+
+    /**
+     * From the start of a task agent to the moment it knows its computer.
+     */
+    double getAllocationMeanMicros();
+
+    long getAllocationP99Micros();
+
+    /**
+     * Tasks computers accepted from their owners, in every submission mode; balancing moves are not counted.
+     */
+    long getPlacedTasks();
+
+    /**
+     * First placements on a computer in the placing agent's own container.
+     */
+    long getLocalPlacements();
+
+    long getBalancingRounds();
+
+    long getTransfers();
+
+    double getConvergenceMeanMillis();
+
+    long getConvergenceMaxMillis();
+
+    /**
+     * DF searches actually sent versus searches answered from a container's directory cache.
+     */
+    long getDirectoryQueries();
+
+    long getDirectoryHits();
+
+    /**
+     * Tasks run by the computers' execution engines, and tasks taken over by idle computers.
+     */
+    long getExecutedTasks();
+
+    double getExecutionMeanMicros();
+
+    long getStolenTasks();
+
+    /**
+     * Global quiescence announced by the TerminationAgent, timed from its start.
+     */
+    long getQuiescenceCount();
+
+    long getQuiescenceMaxMillis();
+
+    int getMaxMailboxDepth();
+
+    double getTotalTimeMin();
+
+    double getTotalTimeMax();
+
+    double getTotalTimeDeviation();
+}
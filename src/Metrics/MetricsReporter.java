@@ -0,0 +1,63 @@
+package Metrics;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends a snapshot of the registry to a CSV file (timestamp_ms,metric,value) at a fixed
+ * rate. Runs on its own daemon thread and only reads the counters, so agents never wait on it.
+ */
+public final class MetricsReporter {
+    private final MetricsRegistry registry;
+    private final Path file;
+    private final long intervalMillis;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "metrics-reporter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public MetricsReporter(MetricsRegistry registry, String file, long intervalMillis) {
+        this.registry = registry;
+        this.file = Paths.get(file);
+        this.intervalMillis = intervalMillis;
+    }
+
+    public void start() {
+        try {
+            if (file.getParent() != null) Files.createDirectories(file.getParent());
+            Files.write(file, "timestamp_ms,metric,value\n".getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        timer.scheduleAtFixedRate(this::dump, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        // Final values are written when the JVM exits
+        Runtime.getRuntime().addShutdownHook(new Thread(this::dump, "metrics-final-dump"));
+    }
+
+    private synchronized void dump() {
+        long timestamp = System.currentTimeMillis();
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.APPEND)) {
+            for (Map.Entry<String, Number> entry : registry.snapshot().entrySet()) {
+                out.write(Long.toString(timestamp));
+                out.write(',');
+                out.write(entry.getKey());
+                out.write(',');
+                out.write(entry.getValue().toString());
+                out.newLine();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
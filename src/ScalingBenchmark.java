@@ -0,0 +1,224 @@
+import Agents.AssignmentLog;
+import Agents.ResultsSink;
+import Agents.Settings;
+import Agents.TaskSource;
+import Benchmarks.TaskGenerator;
+import Metrics.MetricsRegistry;
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.core.Runtime;
+import jade.wrapper.AgentContainer;
+import jade.wrapper.ControllerException;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless scaling run of the whole agent system in one JVM. For every point of the sweep
+ * a fresh platform is started on loopback: the main container with the computers and
+ * "clients" containers that submit a generated workload the way Client does, in the mode
+ * settings.json selects; with spread=true the computers run in the client containers instead,
+ * next to the tasks. Reported per point: time until every task is placed, time until
+ * balancing goes quiet (or the whole system, when terminationDetection is on), makespan
+ * against its lower bound, share of tasks placed in their own container, and ACL messages sent.
+ *
+ * Arguments are key=value pairs, for example:
+ * tasks=100,1000,10000 computers=5,20,50 clients=2 spread=true complexity=zipf capacities=1000,4000 seed=42 out=scaling.csv
+ * Workload parameters are those of TaskGenerator.
+ */
+public class ScalingBenchmark {
+    private final Map<String, String> params;
+    private final int[] taskCounts;
+    private final int[] computerCounts;
+    private final int clients;
+    private final boolean spread;
+    private final long seed;
+    private final String host;
+    private final int basePort;
+    private final long settleMillis;
+    private final long quietMillis;
+    private final long timeoutMillis;
+    private final String out;
+
+    private final Runtime rt = Runtime.instance();
+    private int run = 0;
+
+    private record Point(int computers, int tasks, double allocationMillis, double convergenceMillis,
+                         double makespan, double lowerBound, long local, long messages) {
+    }
+
+    public ScalingBenchmark(Map<String, String> params) {
+        this.params = params;
+        taskCounts = counts(params.getOrDefault("tasks", "100,1000"));
+        computerCounts = counts(params.getOrDefault("computers", "5,20"));
+        clients = Integer.parseInt(params.getOrDefault("clients", "1"));
+        spread = Boolean.parseBoolean(params.getOrDefault("spread", "false"));
+        seed = Long.parseLong(params.getOrDefault("seed", "42"));
+        host = params.getOrDefault("host", "127.0.0.1");
+        basePort = Integer.parseInt(params.getOrDefault("port", "1399"));
+        settleMillis = Long.parseLong(params.getOrDefault("settle", "1000"));
+        quietMillis = Long.parseLong(params.getOrDefault("quiet", "2000"));
+        timeoutMillis = Long.parseLong(params.getOrDefault("timeout", "300000"));
+        out = params.get("out");
+
+        // The platform is started and stopped once per point; the JVM must survive that
+        rt.setCloseVM(false);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> params = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) params.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        new ScalingBenchmark(params).runAll();
+        System.exit(0);
+    }
+
+    public void runAll() throws Exception {
+        List<Point> points = new ArrayList<>();
+        for (int computers : computerCounts)
+            for (int tasks : taskCounts) points.add(measure(computers, tasks));
+
+        System.out.printf("%10s %10s %14s %15s %12s %12s %8s %8s %12s%n", "Computers", "Tasks",
+                "Allocation ms", "Convergence ms", "Makespan", "Lower bound", "Ratio", "Local %", "Messages");
+        for (Point p : points)
+            System.out.printf("%10d %10d %14.0f %15.0f %12.2f %12.2f %8.3f %8.1f %12d%n", p.computers(), p.tasks(),
+                    p.allocationMillis(), p.convergenceMillis(), p.makespan(), p.lowerBound(),
+                    p.makespan() / p.lowerBound(), 100.0 * p.local() / p.tasks(), p.messages());
+
+        if (out != null) {
+            try (PrintWriter writer = new PrintWriter(new FileWriter(out))) {
+                writer.println("computers,tasks,allocation_ms,convergence_ms,makespan,lower_bound,local,messages");
+                for (Point p : points)
+                    writer.println(p.computers() + "," + p.tasks() + "," + p.allocationMillis() + "," +
+                            p.convergenceMillis() + "," + p.makespan() + "," + p.lowerBound() + "," + p.local() + "," +
+                            p.messages());
+            }
+        }
+    }
+
+    private Point measure(int computers, int tasks) throws Exception {
+        // Same seed for every point: a larger point extends the workload of a smaller one
+        TaskGenerator generator = new TaskGenerator(params, seed);
+        int[] capacities = generator.capacities(computers);
+        int[] complexities = generator.complexities(tasks);
+
+        String port = String.valueOf(basePort + run++);
+        // Termination hooks run once, for the platform that is up when they are added
+        CountDownLatch terminated = new CountDownLatch(1);
+        rt.invokeOnTermination(terminated::countDown);
+        ResultsSink.reset();
+        AssignmentLog.reset(new File(Settings.getString("checkpointDir", "src/Files/checkpoints")));
+
+        AgentContainer main = rt.createMainContainer(profile(port, true));
+        List<AgentContainer> containers = new ArrayList<>();
+        for (int i = 0; i < clients; i++) containers.add(rt.createAgentContainer(profile(port, false)));
+        Map<String, Integer> named = new LinkedHashMap<>();
+        for (int c = 0; c < computers; c++) named.put("Computer" + (c + 1), capacities[c]);
+        Server.startComputers(main, spread ? containers : List.of(main), named, clients);
+        Thread.sleep(settleMillis);
+
+        MetricsRegistry metrics = MetricsRegistry.get();
+        long placedBefore = metrics.getPlacedTasks();
+        long localBefore = metrics.getLocalPlacements();
+        long sentBefore = metrics.getMessagesSent();
+        long quiescenceBefore = metrics.getQuiescenceCount();
+        boolean detection = Settings.getBoolean("terminationDetection", false);
+        long start = System.nanoTime();
+
+        // Every client container submits its share, in parallel like separate Client processes
+        List<Thread> submitters = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            AgentContainer container = containers.get(i);
+            List<TaskSource.Task> share = new ArrayList<>();
+            for (int t = i; t < tasks; t += clients) share.add(new TaskSource.Task("Task" + (t + 1), complexities[t]));
+            Thread submitter = new Thread(() -> {
+                try {
+                    Client.submit(container, share.iterator());
+                } catch (ControllerException e) {
+                    e.printStackTrace();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "Submitter-" + (i + 1));
+            submitter.start();
+            submitters.add(submitter);
+        }
+
+        // Placement first, then balancing until neither rounds nor transfers move for quietMillis,
+        // or, with terminationDetection, until the TerminationAgent announces quiescence
+        long deadline = start + timeoutMillis * 1_000_000;
+        double allocationMillis = Double.NaN;
+        double convergenceMillis = Double.NaN;
+        long lastActivity = 0;
+        long lastRounds = 0, lastTransfers = 0;
+        while (System.nanoTime() < deadline) {
+            long now = System.nanoTime();
+            if (Double.isNaN(allocationMillis)) {
+                if (metrics.getPlacedTasks() - placedBefore >= tasks) {
+                    allocationMillis = (now - start) / 1e6;
+                    lastActivity = now;
+                    lastRounds = metrics.getBalancingRounds();
+                    lastTransfers = metrics.getTransfers();
+                }
+            }
+            else if (detection) {
+                if (metrics.getQuiescenceCount() > quiescenceBefore) {
+                    convergenceMillis = (now - start) / 1e6;
+                    break;
+                }
+            }
+            else {
+                long rounds = metrics.getBalancingRounds(), transfers = metrics.getTransfers();
+                if (rounds != lastRounds || transfers != lastTransfers) {
+                    lastRounds = rounds;
+                    lastTransfers = transfers;
+                    lastActivity = now;
+                }
+                else if (now - lastActivity >= quietMillis * 1_000_000) {
+                    convergenceMillis = (lastActivity - start) / 1e6;
+                    break;
+                }
+            }
+            Thread.sleep(10);
+        }
+        double makespan = metrics.getTotalTimeMax();
+        long local = metrics.getLocalPlacements() - localBefore;
+        long messages = metrics.getMessagesSent() - sentBefore;
+
+        for (Thread submitter : submitters) submitter.join();
+        for (AgentContainer container : containers) container.kill();
+        main.kill();
+        if (!terminated.await(30, TimeUnit.SECONDS)) System.err.println("Platform on port " + port + " did not stop");
+        ResultsSink.merge();
+
+        Point point = new Point(computers, tasks, allocationMillis, convergenceMillis, makespan,
+                TaskGenerator.lowerBound(complexities, capacities), local, messages);
+        System.out.println("ScalingBenchmark: " + point);
+        return point;
+    }
+
+    private Profile profile(String port, boolean main) {
+        Profile p = new ProfileImpl();
+        p.setParameter(Profile.MAIN_HOST, host);
+        p.setParameter(Profile.MAIN_PORT, port);
+        p.setParameter(Profile.LOCAL_HOST, host);
+        if (main) p.setParameter(Profile.LOCAL_PORT, port);
+        p.setParameter(Profile.GUI, "false");
+        return p;
+    }
+
+    private static int[] counts(String list) {
+        return Arrays.stream(list.split(",")).mapToInt(Integer::parseInt).toArray();
+    }
+}
@@ -1,6 +1,8 @@
+import Agents.AssignmentLog;
+import Agents.ResultsSink;
+import Agents.Settings;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import jade.core.Profile;
 import jade.core.ProfileImpl;
 import jade.core.Runtime;
@@ -12,6 +14,8 @@ import java.io.File;
 import java.io.IOException;
 import java.net.UnknownHostException;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 public class Server {
@@ -19,31 +23,78 @@ public class Server {
         Runtime rt = Runtime.instance();
 
         Profile p = new ProfileImpl();
-        p.setParameter(Profile.MAIN_HOST, "172.20.10.3");
-        p.setParameter(Profile.MAIN_PORT, "1099");
-        p.setParameter(Profile.GUI, "true"); // Включаем GUI
+        p.setParameter(Profile.MAIN_HOST, Settings.getString("mainHost", "172.20.10.3"));
+        p.setParameter(Profile.MAIN_PORT, String.valueOf(Settings.getInt("mainPort", 1099)));
+        p.setParameter(Profile.GUI, String.valueOf(Settings.getBoolean("gui", true))); // Включаем GUI
         AgentContainer mainContainer = rt.createMainContainer(p);
 
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            ObjectNode emptyRoot = mapper.createObjectNode();
-            mapper.writerWithDefaultPrettyPrinter().writeValue(new File("src/Files/results.json"), emptyRoot);
+            // Computers write their own segments; they are merged once every container is down
+            ResultsSink.reset();
+            // A fresh platform starts without the checkpoints of computers from an earlier run
+            AssignmentLog.reset(new File(Settings.getString("checkpointDir", "src/Files/checkpoints")));
+            rt.invokeOnTermination(() -> {
+                try {
+                    ResultsSink.merge();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
 
             JsonNode computers = new ObjectMapper().readTree(new File("src/Files/computers.json"));
             Iterator<Map.Entry<String, JsonNode>> c = computers.fields();
-
+            Map<String, Integer> capacities = new LinkedHashMap<>();
             while (c.hasNext()) {
                 Map.Entry<String, JsonNode> computer = c.next();
-                AgentController agent = mainContainer.createNewAgent(
-                        computer.getKey(),
-                        "Agents.ComputerAgent",
-                        new Object[]{computer.getValue().path("capacity").asText()}
-                );
-                agent.start();
+                capacities.put(computer.getKey(), computer.getValue().path("capacity").asInt());
             }
+            startComputers(mainContainer, capacities, Settings.getInt("clients", 1));
 
         } catch (StaleProxyException | IOException /*| InterruptedException*/ e) {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Starts a computer agent per entry, in order, plus the brokers when brokerGroupSize is set.
+     * With terminationDetection the TerminationAgent comes first, waiting for that many clients.
+     */
+    static void startComputers(AgentContainer mainContainer, Map<String, Integer> capacities, int clients)
+            throws StaleProxyException {
+        startComputers(mainContainer, List.of(mainContainer), capacities, clients);
+    }
+
+    /**
+     * Same, with the computers spread round robin over the given containers; a broker lives
+     * with the first computer of its group.
+     */
+    static void startComputers(AgentContainer mainContainer, List<AgentContainer> containers,
+                               Map<String, Integer> capacities, int clients) throws StaleProxyException {
+        // With brokers enabled every group of computers gets its own broker
+        int groupSize = Settings.getInt("brokerGroupSize", 0);
+        if (Settings.getBoolean("terminationDetection", false)) {
+            // It must be up before any agent can hand its credit back
+            int agents = capacities.size() + (groupSize > 0 ? (capacities.size() + groupSize - 1) / groupSize : 0);
+            mainContainer.createNewAgent("Termination", "Agents.TerminationAgent",
+                    new Object[]{String.valueOf(agents), String.valueOf(clients)}).start();
+        }
+        int index = 0;
+        String broker = "";
+
+        for (Map.Entry<String, Integer> computer : capacities.entrySet()) {
+            AgentContainer container = containers.get(index % containers.size());
+            if (groupSize > 0 && index % groupSize == 0) {
+                broker = "Broker" + (index / groupSize + 1);
+                container.createNewAgent(broker, "Agents.BrokerAgent", new Object[0]).start();
+            }
+            index++;
+
+            AgentController agent = container.createNewAgent(
+                    computer.getKey(),
+                    "Agents.ComputerAgent",
+                    new Object[]{String.valueOf(computer.getValue()), broker}
+            );
+            agent.start();
+        }
+    }
 }
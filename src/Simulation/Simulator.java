@@ -0,0 +1,331 @@
+package Simulation;
+
+import Agents.LoadIndex;
+import Agents.TaskStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Single-threaded discrete-event model of the TaskAgent/ComputerAgent protocol.
+ * No agent platform is started: messages are events in virtual time and the
+ * computers use the same TaskStore and LoadIndex as ComputerAgent, keyed by index.
+ *
+ * Allocation follows the per-task CFP with open offers counted in the proposals, and
+ * computers that start after tasks have registered ask those tasks once (Question/Answer).
+ * Balancing follows the epochs of ComputerAgent: epoch-tagged Computer-info from everyone,
+ * one Task-exchange per pair, one Remove per owner of a moved task, and the same stop rule.
+ * Every latency is the same, so all computers go through an epoch together; directory
+ * traffic is not counted. Balancing starts once the last task is placed: arrivals slower
+ * than a CFP round trip would let real computers start epochs between tasks.
+ *
+ * Arguments are key=value pairs, for example:
+ * tasks=1000000 computers=10000 latency=1 arrivalInterval=0.001 delta=2 seed=42
+ */
+public class Simulator {
+    private static final int[] CAPACITY_MIX = {1000, 2000, 2500, 4000};
+
+    // Parameters
+    private final int taskCount;
+    private final int computerCount;
+    private final double latency;
+    private final double arrivalInterval;
+    private final double computerStartInterval;
+    private final double proposalTimeout;
+    private final double reservationTimeout;
+    private final double delta;
+    private final int maxTransferTasks;
+    private final int maxEpochs;
+    private final Random random;
+
+    // Event queue
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private long sequence = 0;
+    private double now = 0;
+
+    // Computers
+    private final int[] capacity;
+    private final double[] totalTime;
+    private final List<TaskStore<Integer>> stores = new ArrayList<>();
+    private final LoadIndex<Integer> loadIndex = new LoadIndex<>(Integer::compare);
+    private final Map<Integer, LoadIndex<Integer>> capacityClasses = new TreeMap<>();
+    private int startedComputers = 0;
+    private int readyComputers = 0;
+    private int stuckComputers = 0;
+    // Every computer gets every CFP, so the open offers are the same everywhere and only their time differs
+    private long openComplexity = 0;
+
+    // Tasks
+    private final int[] complexity;
+    private final boolean[] decided;
+    private int registeredTasks = 0;
+    private int firstUndecided = 0;
+    private int placedTasks = 0;
+
+    // Balancing
+    private int epoch = 0;
+    private double[] previousSnapshot = null;
+    private boolean balancingStarted = false;
+
+    // Results
+    private final Map<String, Long> messages = new LinkedHashMap<>();
+    private double allocationTime = 0;
+    private double convergenceTime = Double.NaN;
+    private int epochs = 0;
+
+    private record Event(double time, long sequence, Runnable action) implements Comparable<Event> {
+        public int compareTo(Event other) {
+            int cmp = Double.compare(time, other.time);
+            return cmp != 0 ? cmp : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    public Simulator(Map<String, String> params) {
+        taskCount = Integer.parseInt(params.getOrDefault("tasks", "100000"));
+        computerCount = Integer.parseInt(params.getOrDefault("computers", "1000"));
+        latency = Double.parseDouble(params.getOrDefault("latency", "1"));
+        arrivalInterval = Double.parseDouble(params.getOrDefault("arrivalInterval", "0.001"));
+        computerStartInterval = Double.parseDouble(params.getOrDefault("computerStartInterval", "0"));
+        proposalTimeout = Double.parseDouble(params.getOrDefault("proposalTimeout", "5"));
+        reservationTimeout = Double.parseDouble(params.getOrDefault("reservationTimeout", "6"));
+        delta = Double.parseDouble(params.getOrDefault("delta", "2.0"));
+        maxTransferTasks = Integer.parseInt(params.getOrDefault("maxTransferTasks", "64"));
+        maxEpochs = Integer.parseInt(params.getOrDefault("maxEpochs", "10000"));
+        random = new Random(Long.parseLong(params.getOrDefault("seed", "42")));
+
+        capacity = new int[computerCount];
+        totalTime = new double[computerCount];
+        for (int c = 0; c < computerCount; c++) {
+            capacity[c] = CAPACITY_MIX[random.nextInt(CAPACITY_MIX.length)];
+            stores.add(new TaskStore<>());
+        }
+
+        complexity = new int[taskCount];
+        decided = new boolean[taskCount];
+        for (int t = 0; t < taskCount; t++) complexity[t] = 1000 + random.nextInt(39001);
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> params = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) params.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+
+        Simulator simulator = new Simulator(params);
+        long start = System.nanoTime();
+        simulator.run();
+        simulator.report((System.nanoTime() - start) / 1e6);
+    }
+
+    public void run() {
+        // Computers that start at the same time as the first task are registered before it
+        for (int c = 0; c < computerCount; c++) {
+            int computer = c;
+            schedule(c * computerStartInterval, () -> startComputer(computer));
+        }
+        if (taskCount > 0) schedule(0, () -> register(0));
+        while (!events.isEmpty()) {
+            Event event = events.poll();
+            now = event.time();
+            event.action().run();
+        }
+    }
+
+    private void schedule(double time, Runnable action) {
+        events.add(new Event(time, sequence++, action));
+    }
+
+    private void count(String message, long amount) {
+        messages.merge(message, amount, Long::sum);
+    }
+
+    // ComputerAgent.setup and TaskSubscriptionBehaviour.afterFirstNotification:
+    // one Question to every task registered before the computer
+    private void startComputer(int c) {
+        loadIndex.update(c, totalTime[c]);
+        capacityClasses.computeIfAbsent(capacity[c], k -> new LoadIndex<>(Integer::compare)).update(c, totalTime[c]);
+        startedComputers++;
+        int asked = registeredTasks;
+        if (asked == 0) {
+            readyComputers++;
+            return;
+        }
+        count("Question", asked);
+        schedule(now + latency, () -> answer(asked));
+    }
+
+    // TaskAgent.onQuestion: true once the task has chosen a computer
+    private void answer(int asked) {
+        count("Answer", asked);
+        // Tasks are never told to answer again, so a false Answer keeps the computer from balancing
+        boolean placed = firstUndecided >= asked;
+        schedule(now + latency, () -> {
+            if (placed) readyComputers++;
+            else stuckComputers++;
+            checkAllocationComplete();
+        });
+    }
+
+    private void register(int task) {
+        // Arrivals are chained so the queue only holds messages in flight
+        registeredTasks++;
+        if (task + 1 < taskCount) schedule((task + 1) * arrivalInterval, () -> register(task + 1));
+        search(task);
+    }
+
+    // TaskAgent.SearchComputersBehaviour: one CFP to every computer in the directory;
+    // with none there, the deadline expires without proposals and the task searches again
+    private void search(int task) {
+        if (startedComputers == 0) {
+            schedule(now + proposalTimeout, () -> search(task));
+            return;
+        }
+        int receivers = startedComputers;
+        count("CFP", receivers);
+        schedule(now + latency, () -> propose(task, receivers));
+    }
+
+    // ComputerAgent.onCallForProposal: every computer answers with totalTime plus its open offers and this task.
+    // The best answer is taken from the per-capacity load indexes instead of materializing M proposals.
+    // A computer started while the CFP was in flight is counted as one of its receivers.
+    private void propose(int task, int receivers) {
+        count("PROPOSE", receivers);
+        int best = -1;
+        double bestTime = Double.MAX_VALUE;
+        for (Map.Entry<Integer, LoadIndex<Integer>> entry : capacityClasses.entrySet()) {
+            int c = entry.getValue().select(0);
+            double time = totalTime[c] + (double) (openComplexity + complexity[task]) / entry.getKey();
+            if (time < bestTime) {
+                bestTime = time;
+                best = c;
+            }
+        }
+        // The offer is open until the ACCEPT or REJECT arrives two hops later, or until it expires
+        if (reservationTimeout > 0) {
+            openComplexity += complexity[task];
+            schedule(now + Math.min(reservationTimeout, 2 * latency), () -> openComplexity -= complexity[task]);
+        }
+        int chosen = best;
+        schedule(now + latency, () -> decide(task, chosen, receivers));
+    }
+
+    // TaskAgent.chooseComputer: ACCEPT_PROPOSAL to the best computer, REJECT_PROPOSAL to the others
+    private void decide(int task, int computer, int receivers) {
+        decided[task] = true;
+        while (firstUndecided < taskCount && decided[firstUndecided]) firstUndecided++;
+        count("ACCEPT_PROPOSAL", 1);
+        count("REJECT_PROPOSAL", receivers - 1);
+        schedule(now + latency, () -> accept(task, computer));
+    }
+
+    // ComputerAgent.onAccept
+    private void accept(int task, int c) {
+        stores.get(c).add(task, complexity[task]);
+        setTotalTime(c, totalTime[c] + (double) complexity[task] / capacity[c]);
+        placedTasks++;
+        if (placedTasks == taskCount) allocationTime = now;
+        checkAllocationComplete();
+    }
+
+    private void setTotalTime(int c, double time) {
+        totalTime[c] = time;
+        loadIndex.update(c, time);
+        capacityClasses.get(capacity[c]).update(c, time);
+    }
+
+    // ComputerAgent.checkAllocationComplete: every computer knows that every task is placed
+    private void checkAllocationComplete() {
+        if (balancingStarted || placedTasks < taskCount || readyComputers < computerCount) return;
+        balancingStarted = true;
+        startEpoch();
+    }
+
+    // ComputerAgent.startEpoch: epoch-tagged Computer-info to every other computer
+    private void startEpoch() {
+        epoch++;
+        count("Computer-info", (long) computerCount * (computerCount - 1));
+        schedule(now + latency, this::runEpoch);
+    }
+
+    // ComputerAgent.runEpoch on the snapshot every computer now holds:
+    // lightest with heaviest, second lightest with second heaviest and so on
+    private void runEpoch() {
+        epochs++;
+        double avgTime = loadIndex.average();
+        int withinDelta = loadIndex.countWithin(avgTime - delta, avgTime + delta);
+        double[] snapshot = totalTime.clone();
+        boolean unchanged = Arrays.equals(snapshot, previousSnapshot);
+        previousSnapshot = snapshot;
+        if (withinDelta >= computerCount || unchanged || epochs >= maxEpochs) {
+            convergenceTime = now;
+            return;
+        }
+
+        int[] order = new int[computerCount];
+        for (int k = 0; k < computerCount; k++) order[k] = loadIndex.select(k);
+
+        for (int k = 0; k < computerCount / 2; k++) {
+            int light = order[k];
+            int heavy = order[computerCount - 1 - k];
+            // The heavier side always sends its Task-exchange, even empty: the lighter one waits for it
+            count("Task-exchange", 1);
+            if (totalTime[heavy] <= totalTime[light]) continue;
+
+            List<Map.Entry<Integer, Integer>> transfers = stores.get(heavy).pollTransfers(
+                    totalTime[heavy], capacity[heavy], totalTime[light], capacity[light], avgTime, maxTransferTasks);
+            if (transfers.isEmpty()) continue;
+            // Every task owns itself, so each moved task gets its own Remove,
+            // and the task tells its new computer with an Answer
+            count("Remove", transfers.size());
+            count("Answer", transfers.size());
+            // The indexes are touched once per pair, not once per moved task
+            double heavyTime = totalTime[heavy];
+            double lightTime = totalTime[light];
+            for (Map.Entry<Integer, Integer> transfer : transfers) {
+                stores.get(light).add(transfer.getKey(), transfer.getValue());
+                heavyTime -= (double) transfer.getValue() / capacity[heavy];
+                lightTime += (double) transfer.getValue() / capacity[light];
+            }
+            setTotalTime(heavy, heavyTime);
+            setTotalTime(light, lightTime);
+        }
+
+        // The heavier side moves on at once, the lighter one once the Task-exchange arrives
+        schedule(now + latency, this::startEpoch);
+    }
+
+    public void report(double wallMillis) {
+        double makespan = loadIndex.max();
+        long totalComplexity = 0;
+        long totalCapacity = 0;
+        for (int task : complexity) totalComplexity += task;
+        for (int c : capacity) totalCapacity += c;
+        double lowerBound = (double) totalComplexity / totalCapacity;
+        long totalMessages = messages.values().stream().mapToLong(Long::longValue).sum();
+
+        System.out.println("Tasks:                 " + taskCount);
+        System.out.println("Computers:             " + computerCount);
+        System.out.printf("Allocation finished:   %.3f (virtual time)%n", allocationTime);
+        if (balancingStarted)
+            System.out.printf("Balancing converged:   %.3f (virtual time), epochs=%d%n", convergenceTime, epochs);
+        else
+            System.out.println("Balancing not started: " + stuckComputers + " computer(s) got a false Answer");
+        System.out.printf("Makespan:              %.3f s, lower bound %.3f s, ratio %.4f%n",
+                makespan, lowerBound, makespan / lowerBound);
+        System.out.printf("Load spread:           min %.3f, max %.3f, std %.3f%n",
+                loadIndex.min(), makespan, loadIndex.deviation());
+        System.out.println("Messages:");
+        for (Map.Entry<String, Long> entry : messages.entrySet())
+            System.out.printf("  %-20s%d%n", entry.getKey(), entry.getValue());
+        System.out.printf("  %-20s%d%n", "Total", totalMessages);
+        System.out.printf("Wall time:             %.0f ms%n", wallMillis);
+    }
+}